@@ -16,46 +16,84 @@
 package com.amazonaws.geo;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.geo.dynamodb.internal.DynamoDBManager;
 import com.amazonaws.geo.dynamodb.internal.DynamoDBUtil;
+import com.amazonaws.geo.dynamodb.internal.QueryCursor;
+import com.amazonaws.geo.dynamodb.internal.QueryHandler;
+import com.amazonaws.geo.dynamodb.internal.QueryHedger;
+import com.amazonaws.geo.dynamodb.internal.QueryLimiter;
 import com.amazonaws.geo.model.BatchWritePointResult;
 import com.amazonaws.geo.model.DeletePointRequest;
 import com.amazonaws.geo.model.DeletePointResult;
 import com.amazonaws.geo.model.GeoPoint;
+import com.amazonaws.geo.model.GeoQueryIterator;
 import com.amazonaws.geo.model.GeoQueryRequest;
 import com.amazonaws.geo.model.GeoQueryResult;
+import com.amazonaws.geo.model.GeoRow;
 import com.amazonaws.geo.model.GeohashRange;
 import com.amazonaws.geo.model.GetPointRequest;
 import com.amazonaws.geo.model.GetPointResult;
 import com.amazonaws.geo.model.PutPointRequest;
 import com.amazonaws.geo.model.PutPointResult;
+import com.amazonaws.geo.model.QueryNearestRequest;
+import com.amazonaws.geo.model.QueryNearestResult;
+import com.amazonaws.geo.model.QueryPriority;
 import com.amazonaws.geo.model.QueryRadiusRequest;
 import com.amazonaws.geo.model.QueryRadiusResult;
 import com.amazonaws.geo.model.QueryRectangleRequest;
 import com.amazonaws.geo.model.QueryRectangleResult;
+import com.amazonaws.geo.model.ResultMode;
 import com.amazonaws.geo.model.UpdatePointRequest;
 import com.amazonaws.geo.model.UpdatePointResult;
+import com.amazonaws.geo.s2.internal.DistanceRunMerger;
+import com.amazonaws.geo.s2.internal.GeohashRangeMerger;
+import com.amazonaws.geo.s2.internal.NearestCells;
+import com.amazonaws.geo.s2.internal.PointFilter;
+import com.amazonaws.geo.s2.internal.QueryPlan;
+import com.amazonaws.geo.s2.internal.QueryPlanCache;
 import com.amazonaws.geo.s2.internal.S2Manager;
 import com.amazonaws.geo.s2.internal.S2Util;
 import com.amazonaws.geo.util.GeoJsonMapper;
+import com.amazonaws.geo.util.QueryRetryPolicy;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.QueryRequest;
 import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.google.common.base.Function;
+import com.google.common.geometry.S2Cap;
 import com.google.common.geometry.S2CellId;
 import com.google.common.geometry.S2CellUnion;
 import com.google.common.geometry.S2LatLng;
 import com.google.common.geometry.S2LatLngRect;
+import com.google.common.geometry.S2Region;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
 /**
  * <p>
  * Manager to hangle geo spatial data in Amazon DynamoDB tables. All service calls made using this client are blocking,
- * and will not return until the service call completes.
+ * and will not return until the service call completes, except the methods ending with Async. These return a
+ * ListenableFuture, and use the asynchronous client if the configured client is an AmazonDynamoDBAsync.
  * </p>
  * <p>
  * This class is designed to be thread safe; however, once constructed GeoDataManagerConfiguration should not be
@@ -63,8 +101,29 @@ import com.google.common.geometry.S2LatLngRect;
  * </p>
  * */
 public class GeoDataManager {
+	/**
+	 * The radius of the first ring of a nearest query is the maximum radius divided by this number; each further ring
+	 * doubles the radius.
+	 */
+	private static final int NEAREST_RING_COUNT = 8;
+
+	/**
+	 * Number of geohash ranges queried at a time by a geo query with a limit. The ranges are queried nearest first, so
+	 * the limit is usually reached before the farther ranges are queried at all.
+	 */
+	private static final int LIMITED_RANGE_CONCURRENCY = 4;
+
+	/**
+	 * Number of items read per item still missing from the page of a paginated geo query. The limit of a query request
+	 * applies before the area filter, and the cells at the edge of the area hold items outside of it.
+	 */
+	private static final int PAGINATED_PAGE_LIMIT_FACTOR = 2;
+
 	private GeoDataManagerConfiguration config;
 	private DynamoDBManager dynamoDBManager;
+	private QueryPlanCache queryPlanCache;
+	private QueryLimiter queryLimiter;
+	private QueryHedger queryHedger;
 
 	/**
 	 * <p>
@@ -90,6 +149,21 @@ public class GeoDataManager {
 	public GeoDataManager(GeoDataManagerConfiguration config) {
 		this.config = config;
 		dynamoDBManager = new DynamoDBManager(this.config);
+
+		QueryPriority[] priorities = QueryPriority.values();
+		int[] weights = new int[priorities.length];
+		for (QueryPriority priority : priorities) {
+			weights[priority.ordinal()] = this.config.getQueryPriorityWeight(priority);
+		}
+		queryLimiter = new QueryLimiter(this.config.getConcurrencyLimit(), weights);
+
+		if (this.config.getQueryHedgingPercentile() > 0) {
+			queryHedger = new QueryHedger(this.config.getQueryHedgingPercentile(), this.config.getQueryHedgingBudget());
+		}
+
+		if (this.config.getQueryPlanCacheSize() > 0) {
+			queryPlanCache = new QueryPlanCache(this.config.getQueryPlanCacheSize());
+		}
 	}
 
 	/**
@@ -104,6 +178,19 @@ public class GeoDataManager {
 		return config;
 	}
 
+	/**
+	 * <p>
+	 * Return the cache of query plans, e.g. to monitor its hit and miss counts.
+	 * </p>
+	 * 
+	 * @return
+	 *         QueryPlanCache used by this GeoDataManager, or null if the cache is disabled in
+	 *         GeoDataManagerConfiguration.
+	 */
+	public QueryPlanCache getQueryPlanCache() {
+		return queryPlanCache;
+	}
+
 	/**
 	 * <p>
 	 * Put a point into the Amazon DynamoDB table. Once put, you cannot update attributes specified in
@@ -131,6 +218,20 @@ public class GeoDataManager {
 	public PutPointResult putPoint(PutPointRequest putPointRequest) {
 		return dynamoDBManager.putPoint(putPointRequest);
 	}
+
+	/**
+	 * <p>
+	 * Put a point into the Amazon DynamoDB table without blocking. See putPoint() for details.
+	 * </p>
+	 * 
+	 * @param putPointRequest
+	 *            Container for the necessary parameters to execute put point request.
+	 * 
+	 * @return Future of the result of put point request.
+	 */
+	public ListenableFuture<PutPointResult> putPointAsync(PutPointRequest putPointRequest) {
+		return dynamoDBManager.putPointAsync(putPointRequest);
+	}
 	
 	/**
 	 * <p>
@@ -186,12 +287,36 @@ public class GeoDataManager {
 		return dynamoDBManager.getPoint(getPointRequest);
 	}
 
+	/**
+	 * <p>
+	 * Get a point from the Amazon DynamoDB table without blocking. See getPoint() for details.
+	 * </p>
+	 * 
+	 * @param getPointRequest
+	 *            Container for the necessary parameters to execute get point request.
+	 * 
+	 * @return Future of the result of get point request.
+	 * */
+	public ListenableFuture<GetPointResult> getPointAsync(GetPointRequest getPointRequest) {
+		return dynamoDBManager.getPointAsync(getPointRequest);
+	}
+
 	/**
 	 * <p>
 	 * Query a rectangular area constructed by two points and return all points within the area. Two points need to
 	 * construct a rectangle from minimum and maximum latitudes and longitudes. If minPoint.getLongitude() >
 	 * maxPoint.getLongitude(), the rectangle spans the 180 degree longitude line.
 	 * </p>
+	 * <p>
+	 * If GeoQueryRequest.setTimeoutInMillis() is set and the deadline expires, the points retrieved so far are returned
+	 * and QueryRectangleResult.isPartial() is true; getUncoveredRanges() lists the geohash ranges that were not
+	 * queried. The same applies to the other query methods, except the iterators.
+	 * </p>
+	 * <p>
+	 * If GeoQueryRequest.setPageSize() is set, at most that many points are returned, and
+	 * QueryRectangleResult.getNextCursor() returns a cursor to pass to GeoQueryRequest.setCursor() to get the next
+	 * points. Only the pages needed are read. The same applies to queryRadius().
+	 * </p>
 	 * <b>Sample usage:</b>
 	 * 
 	 * <pre>
@@ -212,19 +337,92 @@ public class GeoDataManager {
 	 * @return Result of rectangle query request.
 	 */
 	public QueryRectangleResult queryRectangle(QueryRectangleRequest queryRectangleRequest) {
-		S2LatLngRect latLngRect = S2Util.getBoundingLatLngRect(queryRectangleRequest);
+		QueryPlan queryPlan = getQueryPlan(queryRectangleRequest);
 
-		S2CellUnion cellUnion = S2Manager.findCellIds(latLngRect);
+		return new QueryRectangleResult(dispatchQueries(queryPlan, queryRectangleRequest));
+	}
 
-		List<GeohashRange> ranges = mergeCells(cellUnion);
-		cellUnion = null;
+	/**
+	 * <p>
+	 * Query a rectangular area without blocking. See queryRectangle() for details on the request. The returned future
+	 * completes once all points within the area have been retrieved. If the configured client is an
+	 * AmazonDynamoDBAsync, the pages are queried with the asynchronous client; otherwise they are queried on the
+	 * executor service of GeoDataManagerConfiguration.
+	 * </p>
+	 * <b>Sample usage:</b>
+	 * 
+	 * <pre>
+	 * GeoPoint minPoint = new GeoPoint(45.5, -124.3);
+	 * GeoPoint maxPoint = new GeoPoint(49.5, -120.3);
+	 * 
+	 * QueryRectangleRequest queryRectangleRequest = new QueryRectangleRequest(minPoint, maxPoint);
+	 * ListenableFuture&lt;QueryRectangleResult&gt; future = geoIndexManager.queryRectangleAsync(queryRectangleRequest);
+	 * 
+	 * future.addListener(new Runnable() {
+	 * 	public void run() {
+	 * 		// future.get() does not block here.
+	 * 	}
+	 * }, executor);
+	 * </pre>
+	 * 
+	 * @param queryRectangleRequest
+	 *            Container for the necessary parameters to execute rectangle query request.
+	 * 
+	 * @return Future of the result of rectangle query request.
+	 */
+	public ListenableFuture<QueryRectangleResult> queryRectangleAsync(QueryRectangleRequest queryRectangleRequest) {
+		QueryPlan queryPlan = getQueryPlan(queryRectangleRequest);
+
+		return Futures.transform(dispatchQueriesAsync(queryPlan, queryRectangleRequest),
+				new Function<GeoQueryResult, QueryRectangleResult>() {
+					public QueryRectangleResult apply(GeoQueryResult geoQueryResult) {
+						return new QueryRectangleResult(geoQueryResult);
+					}
+				});
+	}
+
+	/**
+	 * <p>
+	 * Query a rectangular area and iterate over the points within the area as they are retrieved. See
+	 * queryRectangle() for details on the request. Unlike queryRectangle(), the items of a page are returned as soon as
+	 * the page has been filtered, and only a bounded number of pages is buffered
+	 * (GeoDataManagerConfiguration.getQueryIteratorBufferSize()). If the iterator is not consumed, no further pages
+	 * are queried. Call close() when you stop iterating before the end.
+	 * </p>
+	 * <b>Sample usage:</b>
+	 * 
+	 * <pre>
+	 * GeoPoint minPoint = new GeoPoint(45.5, -124.3);
+	 * GeoPoint maxPoint = new GeoPoint(49.5, -120.3);
+	 * 
+	 * QueryRectangleRequest queryRectangleRequest = new QueryRectangleRequest(minPoint, maxPoint);
+	 * GeoQueryIterator iterator = geoIndexManager.queryRectangleIterator(queryRectangleRequest);
+	 * 
+	 * try {
+	 * 	while (iterator.hasNext()) {
+	 * 		System.out.println(&quot;item: &quot; + iterator.next());
+	 * 	}
+	 * } finally {
+	 * 	iterator.close();
+	 * }
+	 * </pre>
+	 * 
+	 * @param queryRectangleRequest
+	 *            Container for the necessary parameters to execute rectangle query request.
+	 * 
+	 * @return Iterator over the points within the area.
+	 */
+	public GeoQueryIterator queryRectangleIterator(QueryRectangleRequest queryRectangleRequest) {
+		QueryPlan queryPlan = getQueryPlan(queryRectangleRequest);
 
-		return new QueryRectangleResult(dispatchQueries(ranges, queryRectangleRequest));
+		return dispatchQueriesStreaming(queryPlan, queryRectangleRequest);
 	}
 
 	/**
 	 * <p>
-	 * Query a circular area constructed by a center point and its radius.
+	 * Query a circular area constructed by a center point and its radius. If
+	 * QueryRadiusRequest.withSortedByDistance(true) is set, the items are ordered by distance from the center point and
+	 * QueryRadiusResult.getDistanceInMeter() returns the distance of each item.
 	 * </p>
 	 * <b>Sample usage:</b>
 	 * 
@@ -245,14 +443,259 @@ public class GeoDataManager {
 	 * @return Result of radius query request.
 	 * */
 	public QueryRadiusResult queryRadius(QueryRadiusRequest queryRadiusRequest) {
-		S2LatLngRect latLngRect = S2Util.getBoundingLatLngRect(queryRadiusRequest);
+		QueryPlan queryPlan = getQueryPlan(queryRadiusRequest);
 
-		S2CellUnion cellUnion = S2Manager.findCellIds(latLngRect);
+		return new QueryRadiusResult(dispatchQueries(queryPlan, queryRadiusRequest));
+	}
 
-		List<GeohashRange> ranges = mergeCells(cellUnion);
-		cellUnion = null;
+	/**
+	 * <p>
+	 * Query a circular area without blocking. See queryRectangleAsync() for how the pages are queried.
+	 * </p>
+	 * <b>Sample usage:</b>
+	 * 
+	 * <pre>
+	 * GeoPoint centerPoint = new GeoPoint(47.5, -122.3);
+	 * 
+	 * QueryRadiusRequest queryRadiusRequest = new QueryRadiusRequest(centerPoint, 100);
+	 * ListenableFuture&lt;QueryRadiusResult&gt; future = geoIndexManager.queryRadiusAsync(queryRadiusRequest);
+	 * </pre>
+	 * 
+	 * @param queryRadiusRequest
+	 *            Container for the necessary parameters to execute radius query request.
+	 * 
+	 * @return Future of the result of radius query request.
+	 * */
+	public ListenableFuture<QueryRadiusResult> queryRadiusAsync(QueryRadiusRequest queryRadiusRequest) {
+		QueryPlan queryPlan = getQueryPlan(queryRadiusRequest);
+
+		return Futures.transform(dispatchQueriesAsync(queryPlan, queryRadiusRequest),
+				new Function<GeoQueryResult, QueryRadiusResult>() {
+					public QueryRadiusResult apply(GeoQueryResult geoQueryResult) {
+						return new QueryRadiusResult(geoQueryResult);
+					}
+				});
+	}
+
+	/**
+	 * <p>
+	 * Query a circular area and iterate over the points within the area as they are retrieved. See
+	 * queryRectangleIterator() for details. The points are not sorted by distance.
+	 * </p>
+	 * 
+	 * @param queryRadiusRequest
+	 *            Container for the necessary parameters to execute radius query request.
+	 * 
+	 * @return Iterator over the points within the area.
+	 * */
+	public GeoQueryIterator queryRadiusIterator(QueryRadiusRequest queryRadiusRequest) {
+		QueryPlan queryPlan = getQueryPlan(queryRadiusRequest);
+
+		return dispatchQueriesStreaming(queryPlan, queryRadiusRequest);
+	}
+
+	/**
+	 * <p>
+	 * Query the points nearest to a center point, up to a maximum radius. The covering cells are queried in rings of
+	 * increasing distance from the center point, and no further ring is queried once the requested number of points
+	 * are nearer than the nearest remaining cell. The result is ordered by distance, nearest first.
+	 * </p>
+	 * <b>Sample usage:</b>
+	 * 
+	 * <pre>
+	 * GeoPoint centerPoint = new GeoPoint(47.5, -122.3);
+	 * 
+	 * QueryNearestRequest queryNearestRequest = new QueryNearestRequest(centerPoint, 20, 10000);
+	 * QueryNearestResult queryNearestResult = geoIndexManager.queryNearest(queryNearestRequest);
+	 * 
+	 * List&lt;Double&gt; distanceInMeter = queryNearestResult.getDistanceInMeter();
+	 * for (int i = 0; i &lt; distanceInMeter.size(); i++) {
+	 * 	System.out.println(distanceInMeter.get(i) + &quot;m: &quot; + queryNearestResult.getItem().get(i));
+	 * }
+	 * </pre>
+	 * 
+	 * @param queryNearestRequest
+	 *            Container for the necessary parameters to execute nearest query request.
+	 * 
+	 * @return Result of nearest query request.
+	 * */
+	public QueryNearestResult queryNearest(QueryNearestRequest queryNearestRequest) {
+		int count = queryNearestRequest.getCount();
+		if (count <= 0) {
+			throw new IllegalArgumentException("Count must be positive.");
+		}
+		if (!(queryNearestRequest.getMaxRadiusInMeter() > 0)) {
+			throw new IllegalArgumentException("Maximum radius must be positive.");
+		}
+
+		GeoPoint centerPoint = queryNearestRequest.getCenterPoint();
+		S2LatLng centerLatLng = S2LatLng.fromDegrees(centerPoint.getLatitude(), centerPoint.getLongitude());
+		NearestCells nearestCells = new NearestCells(findNearestCellIds(S2Util.getBoundingCap(queryNearestRequest)),
+				centerLatLng);
+
+		boolean compact = queryNearestRequest.getResultMode() == ResultMode.COMPACT;
+
+		// Max-heaps of the nearest points found so far; the farthest candidate is at the head. Only the queue of the
+		// result mode is used.
+		PriorityQueue<NearestItem<Map<String, AttributeValue>>> itemCandidates = createCandidates(count);
+		PriorityQueue<NearestItem<GeoRow>> rowCandidates = createCandidates(count);
+		GeoQueryResult geoQueryResult = new GeoQueryResult();
+
+		long timeoutInMillis = queryNearestRequest.getTimeoutInMillis();
+		long deadline = System.currentTimeMillis() + timeoutInMillis;
+
+		double ringRadiusInMeter = queryNearestRequest.getMaxRadiusInMeter() / NEAREST_RING_COUNT;
+		while (nearestCells.hasNext()) {
+			double nextDistance = nearestCells.getNextDistance();
+			if (isNearestFound(itemCandidates, count, nextDistance)
+					|| isNearestFound(rowCandidates, count, nextDistance)) {
+				break;
+			}
+
+			long remainingMillis = 0;
+			if (timeoutInMillis > 0) {
+				remainingMillis = deadline - System.currentTimeMillis();
+				if (remainingMillis <= 0) {
+					addUncoveredRanges(nearestCells.nextRing(Double.POSITIVE_INFINITY), geoQueryResult);
+					break;
+				}
+			}
+
+			QueryPlan queryPlan = createQueryPlan(nearestCells.nextRing(ringRadiusInMeter));
+			GeoQueryResult ringResult = dispatchQueries(queryPlan, queryNearestRequest, remainingMillis);
+			geoQueryResult.getQueryResults().addAll(ringResult.getQueryResults());
+			geoQueryResult.getUncoveredRanges().addAll(ringResult.getUncoveredRanges());
+
+			if (compact) {
+				offerNearest(rowCandidates, count, ringResult.getRows(), ringResult.getDistanceInMeter());
+			} else {
+				offerNearest(itemCandidates, count, ringResult.getItem(), ringResult.getDistanceInMeter());
+			}
+
+			if (ringResult.isPartial()) {
+				if (nearestCells.hasNext()) {
+					addUncoveredRanges(nearestCells.nextRing(Double.POSITIVE_INFINITY), geoQueryResult);
+				}
+				break;
+			}
+
+			ringRadiusInMeter *= 2;
+		}
+
+		List<Double> distanceInMeter = new ArrayList<Double>(count);
+		addNearest(itemCandidates, geoQueryResult.getItem(), distanceInMeter);
+		addNearest(rowCandidates, geoQueryResult.getRows(), distanceInMeter);
+		geoQueryResult.setDistanceInMeter(distanceInMeter);
+
+		return new QueryNearestResult(geoQueryResult);
+	}
+
+	/**
+	 * <p>
+	 * Query several rectangular and circular areas at once. The geohash ranges of the requests that use the same
+	 * QueryRequest are merged, and every merged range is queried once; each page is filtered for every request whose
+	 * ranges it covers. Areas that overlap, like those of nearby vehicles, are therefore read once instead of once per
+	 * request. The deadline, result mode and sorting of each request apply to its own result; the query requests are
+	 * sent with the highest priority of the requests sharing them.
+	 * </p>
+	 * <b>Sample usage:</b>
+	 * 
+	 * <pre>
+	 * List&lt;GeoQueryRequest&gt; geoQueryRequests = new ArrayList&lt;GeoQueryRequest&gt;();
+	 * geoQueryRequests.add(new QueryRadiusRequest(new GeoPoint(47.5, -122.3), 500));
+	 * geoQueryRequests.add(new QueryRadiusRequest(new GeoPoint(47.501, -122.301), 500));
+	 * 
+	 * List&lt;GeoQueryResult&gt; geoQueryResults = geoIndexManager.batchQuery(geoQueryRequests);
+	 * QueryRadiusResult queryRadiusResult = (QueryRadiusResult) geoQueryResults.get(0);
+	 * </pre>
+	 * 
+	 * @param geoQueryRequests
+	 *            Rectangle and radius query requests. Nearest queries and requests with a page size or a cursor cannot
+	 *            be batched.
+	 * 
+	 * @return Result of each request, in the same order. The result of a QueryRectangleRequest is a
+	 *         QueryRectangleResult and the result of a QueryRadiusRequest is a QueryRadiusResult.
+	 */
+	public List<GeoQueryResult> batchQuery(List<? extends GeoQueryRequest> geoQueryRequests) {
+		return waitFor(batchQueryAsync(geoQueryRequests));
+	}
+
+	/**
+	 * Query several rectangular and circular areas at once without blocking. See batchQuery() for details.
+	 * 
+	 * @param geoQueryRequests
+	 *            Rectangle and radius query requests. Nearest queries and requests with a page size or a cursor cannot
+	 *            be batched.
+	 * 
+	 * @return Future of the result of each request, in the same order. It fails if any of the requests fails.
+	 */
+	public ListenableFuture<List<GeoQueryResult>> batchQueryAsync(List<? extends GeoQueryRequest> geoQueryRequests) {
+		QueryPlan[] queryPlans = new QueryPlan[geoQueryRequests.size()];
+		for (int i = 0; i < queryPlans.length; i++) {
+			GeoQueryRequest geoQueryRequest = geoQueryRequests.get(i);
+			if (geoQueryRequest instanceof QueryRectangleRequest) {
+				queryPlans[i] = getQueryPlan((QueryRectangleRequest) geoQueryRequest);
+			} else if (geoQueryRequest instanceof QueryRadiusRequest) {
+				queryPlans[i] = getQueryPlan((QueryRadiusRequest) geoQueryRequest);
+			} else {
+				throw new IllegalArgumentException("Only rectangle and radius queries can be batched.");
+			}
 
-		return new QueryRadiusResult(dispatchQueries(ranges, queryRadiusRequest));
+			if (geoQueryRequest.getPageSize() > 0 || geoQueryRequest.getCursor() != null) {
+				throw new IllegalArgumentException("Paginated queries cannot be batched.");
+			}
+		}
+
+		// Only requests with the same query request can share the pages.
+		Map<QueryRequest, List<Integer>> groups = new LinkedHashMap<QueryRequest, List<Integer>>();
+		for (int i = 0; i < queryPlans.length; i++) {
+			QueryRequest queryRequest = geoQueryRequests.get(i).getQueryRequest();
+			if (!groups.containsKey(queryRequest)) {
+				groups.put(queryRequest, new ArrayList<Integer>());
+			}
+			groups.get(queryRequest).add(i);
+		}
+
+		BufferedGeoQuery[] geoQueries = new BufferedGeoQuery[queryPlans.length];
+		for (List<Integer> group : groups.values()) {
+			dispatchBatchQueries(group, queryPlans, geoQueryRequests, geoQueries);
+		}
+
+		final SettableFuture<List<GeoQueryResult>> future = SettableFuture.create();
+		final GeoQueryResult[] geoQueryResults = new GeoQueryResult[geoQueries.length];
+		final AtomicInteger remainingResults = new AtomicInteger(geoQueries.length);
+		if (geoQueries.length == 0) {
+			future.set(new ArrayList<GeoQueryResult>());
+		}
+
+		for (int i = 0; i < geoQueries.length; i++) {
+			final int index = i;
+			final GeoQueryRequest geoQueryRequest = geoQueryRequests.get(i);
+			final ListenableFuture<GeoQueryResult> geoQueryFuture = geoQueries[i].getFuture();
+			geoQueryFuture.addListener(new Runnable() {
+				public void run() {
+					try {
+						if (geoQueryRequest instanceof QueryRectangleRequest) {
+							geoQueryResults[index] = new QueryRectangleResult(geoQueryFuture.get());
+						} else {
+							geoQueryResults[index] = new QueryRadiusResult(geoQueryFuture.get());
+						}
+					} catch (ExecutionException e) {
+						future.setException(e.getCause());
+						return;
+					} catch (InterruptedException e) {
+						future.setException(e);
+						return;
+					}
+
+					if (remainingResults.decrementAndGet() == 0) {
+						future.set(Arrays.asList(geoQueryResults));
+					}
+				}
+			}, MoreExecutors.sameThreadExecutor());
+		}
+
+		return future;
 	}
 
 	/**
@@ -288,6 +731,20 @@ public class GeoDataManager {
 		return dynamoDBManager.updatePoint(updatePointRequest);
 	}
 
+	/**
+	 * <p>
+	 * Update a point data in Amazon DynamoDB table without blocking. See updatePoint() for details.
+	 * </p>
+	 * 
+	 * @param updatePointRequest
+	 *            Container for the necessary parameters to execute update point request.
+	 * 
+	 * @return Future of the result of update point request.
+	 */
+	public ListenableFuture<UpdatePointResult> updatePointAsync(UpdatePointRequest updatePointRequest) {
+		return dynamoDBManager.updatePointAsync(updatePointRequest);
+	}
+
 	/**
 	 * <p>
 	 * Delete a point from the Amazon DynamoDB table.
@@ -314,151 +771,1918 @@ public class GeoDataManager {
 	}
 
 	/**
-	 * Merge continuous cells in cellUnion and return a list of merged GeohashRanges.
+	 * <p>
+	 * Delete a point from the Amazon DynamoDB table without blocking. See deletePoint() for details.
+	 * </p>
 	 * 
-	 * @param cellUnion
-	 *            Container for multiple cells.
+	 * @param deletePointRequest
+	 *            Container for the necessary parameters to execute delete point request.
 	 * 
-	 * @return A list of merged GeohashRanges.
+	 * @return Future of the result of delete point request.
 	 */
-	private List<GeohashRange> mergeCells(S2CellUnion cellUnion) {
+	public ListenableFuture<DeletePointResult> deletePointAsync(DeletePointRequest deletePointRequest) {
+		return dynamoDBManager.deletePointAsync(deletePointRequest);
+	}
 
-		List<GeohashRange> ranges = new ArrayList<GeohashRange>();
-		for (S2CellId c : cellUnion.cellIds()) {
-			GeohashRange range = new GeohashRange(c.rangeMin().id(), c.rangeMax().id());
+	private QueryPlan getQueryPlan(QueryRectangleRequest queryRectangleRequest) {
+		S2LatLngRect latLngRect = S2Util.getBoundingLatLngRect(queryRectangleRequest);
+		if (queryPlanCache != null) {
+			latLngRect = S2Util.getQuantizedLatLngRect(latLngRect, config.getQueryPlanCachePrecisionInDegree());
+		}
 
-			boolean wasMerged = false;
-			for (GeohashRange r : ranges) {
-				if (r.tryMerge(range)) {
-					wasMerged = true;
-					break;
-				}
-			}
+		return getQueryPlan(latLngRect);
+	}
 
-			if (!wasMerged) {
-				ranges.add(range);
-			}
+	private QueryPlan getQueryPlan(QueryRadiusRequest queryRadiusRequest) {
+		S2Cap cap;
+		if (queryPlanCache != null) {
+			cap = S2Util.getQuantizedCap(queryRadiusRequest, config.getQueryPlanCachePrecisionInDegree());
+		} else {
+			cap = S2Util.getBoundingCap(queryRadiusRequest);
 		}
 
-		return ranges;
+		return getQueryPlan(cap);
 	}
 
 	/**
-	 * Query Amazon DynamoDB in parallel and filter the result.
-	 * 
-	 * @param ranges
-	 *            A list of geohash ranges that will be used to query Amazon DynamoDB.
+	 * Get the plan to query the region from the cache, or create it if it is not cached.
 	 * 
-	 * @param latLngRect
-	 *            The rectangle area that will be used as a reference point for precise filtering.
+	 * @param region
+	 *            Queried area. It must be quantized when the cache is enabled.
 	 * 
-	 * @return Aggregated and filtered items returned from Amazon DynamoDB.
+	 * @return Geohash ranges and their hash keys to query.
 	 */
-	private GeoQueryResult dispatchQueries(List<GeohashRange> ranges, GeoQueryRequest geoQueryRequest) {
-		GeoQueryResult geoQueryResult = new GeoQueryResult();
-
-		ExecutorService executorService = config.getExecutorService();
-		List<Future<?>> futureList = new ArrayList<Future<?>>();
-
-		for (GeohashRange outerRange : ranges) {
-			for (GeohashRange range : outerRange.trySplit(config.getHashKeyLength())) {
-				GeoQueryThread geoQueryThread = new GeoQueryThread(geoQueryRequest, geoQueryResult, range);
-				futureList.add(executorService.submit(geoQueryThread));
-			}
+	private QueryPlan getQueryPlan(S2Region region) {
+		if (queryPlanCache == null) {
+			return createQueryPlan(region);
 		}
-		ranges = null;
 
-		for (int i = 0; i < futureList.size(); i++) {
-			try {
-				futureList.get(i).get();
-			} catch (Exception e) {
-				for (int j = i + 1; j < futureList.size(); j++) {
-					futureList.get(j).cancel(true);
-				}
-				throw new AmazonClientException("Querying Amazon DynamoDB failed.", e);
-			}
+		// Plans built with another merge policy, or before the policy has learned a different density, are not reused.
+		QueryPlan queryPlan = queryPlanCache.get(region, config.getHashKeyStrategy(), config.getRangeMergePolicy());
+		if (queryPlan == null) {
+			queryPlan = createQueryPlan(region);
+			queryPlanCache.put(region, config.getHashKeyStrategy(), config.getRangeMergePolicy(), queryPlan);
 		}
-		futureList = null;
 
-		return geoQueryResult;
+		return queryPlan;
 	}
 
 	/**
-	 * Filter out any points outside of the queried area from the input list.
-	 * 
-	 * @param list
-	 *            List of items return by Amazon DynamoDB. It may contains points outside of the actual area queried.
+	 * Cover the region with cells, merge them into geohash ranges and split the ranges by hash key.
 	 * 
-	 * @param latLngRect
-	 *            Queried area. Any points outside of this area need to be discarded.
+	 * @param region
+	 *            Queried area.
 	 * 
-	 * @return List of items within the queried area.
+	 * @return Geohash ranges and their hash keys to query.
 	 */
-	private List<Map<String, AttributeValue>> filter(List<Map<String, AttributeValue>> list,
-			GeoQueryRequest geoQueryRequest) {
-
-		List<Map<String, AttributeValue>> result = new ArrayList<Map<String, AttributeValue>>();
+	private QueryPlan createQueryPlan(S2Region region) {
+		return createQueryPlan(findCellIds(region));
+	}
 
-		S2LatLngRect latLngRect = null;
-		S2LatLng centerLatLng = null;
-		double radiusInMeter = 0;
-		if (geoQueryRequest instanceof QueryRectangleRequest) {
-			latLngRect = S2Util.getBoundingLatLngRect(geoQueryRequest);
-		} else if (geoQueryRequest instanceof QueryRadiusRequest) {
-			GeoPoint centerPoint = ((QueryRadiusRequest) geoQueryRequest).getCenterPoint();
-			centerLatLng = S2LatLng.fromDegrees(centerPoint.getLatitude(), centerPoint.getLongitude());
+	/**
+	 * Merge the cells into geohash ranges and split the ranges by hash key.
+	 * 
+	 * @param cellUnion
+	 *            Cells to query.
+	 * 
+	 * @return Geohash ranges and their hash keys to query.
+	 */
+	private QueryPlan createQueryPlan(S2CellUnion cellUnion) {
+		long[] ranges = mergeCells(cellUnion);
+		cellUnion = null;
 
-			radiusInMeter = ((QueryRadiusRequest) geoQueryRequest).getRadiusInMeter();
+		QueryPlan.Builder builder = new QueryPlan.Builder();
+		for (int i = 0; i < ranges.length; i += 2) {
+			S2Manager.splitByHashKey(ranges[i], ranges[i + 1], config.getHashKeyStrategy(), builder);
 		}
 
-		for (Map<String, AttributeValue> item : list) {
-			String geoJson = item.get(config.getGeoJsonAttributeName()).getS();
-			GeoPoint geoPoint = GeoJsonMapper.geoPointFromString(geoJson);
+		return builder.build();
+	}
 
-			S2LatLng latLng = S2LatLng.fromDegrees(geoPoint.getLatitude(), geoPoint.getLongitude());
-			if (latLngRect != null && latLngRect.contains(latLng)) {
-				result.add(item);
-			} else if (centerLatLng != null && radiusInMeter > 0
-					&& centerLatLng.getEarthDistance(latLng) <= radiusInMeter) {
-				result.add(item);
-			}
+	private void addUncoveredRanges(S2CellUnion cellUnion, GeoQueryResult geoQueryResult) {
+		QueryPlan queryPlan = createQueryPlan(cellUnion);
+		for (int i = 0; i < queryPlan.size(); i++) {
+			geoQueryResult.getUncoveredRanges().add(queryPlan.getGeohashRange(i));
 		}
+	}
 
-		return result;
+	/**
+	 * Cover the region with cells, bounded by the covering levels and the maximum number of cells in
+	 * GeoDataManagerConfiguration.
+	 * 
+	 * @param region
+	 *            Queried area.
+	 * 
+	 * @return Container for the cells covering the region.
+	 */
+	private S2CellUnion findCellIds(S2Region region) {
+		return S2Manager.findCellIds(region, config.getCoveringMinLevel(), config.getCoveringMaxLevel(),
+				config.getCoveringMaxCells());
 	}
 
 	/**
-	 * Worker thread to query Amazon DynamoDB.
-	 * */
-	private class GeoQueryThread extends Thread {
-		private GeoQueryRequest geoQueryRequest;
-		private GeoQueryResult geoQueryResult;
-		private GeohashRange range;
+	 * Cover the cap of a nearest query with cells fine enough for its rings. The first ring has 1 / NEAREST_RING_COUNT
+	 * of the radius, so 1 / NEAREST_RING_COUNT^2 of the area, and gets about as many cells as a query of its own size.
+	 * 
+	 * @param cap
+	 *            Cap of the maximum radius of the nearest query.
+	 * 
+	 * @return Container for the cells covering the cap.
+	 */
+	private S2CellUnion findNearestCellIds(S2Cap cap) {
+		return S2Manager.findCellIds(cap, config.getCoveringMinLevel(), config.getCoveringMaxLevel(),
+				config.getCoveringMaxCells() * NEAREST_RING_COUNT * NEAREST_RING_COUNT);
+	}
 
-		public GeoQueryThread(GeoQueryRequest geoQueryRequest, GeoQueryResult geoQueryResult, GeohashRange range) {
-			this.geoQueryRequest = geoQueryRequest;
-			this.geoQueryResult = geoQueryResult;
-			this.range = range;
+	/**
+	 * Merge continuous cells in cellUnion and return the merged geohash ranges.
+	 * 
+	 * @param cellUnion
+	 *            Container for multiple cells.
+	 * 
+	 * @return Merged geohash ranges, packed as { min0, max0, min1, max1, ... }.
+	 */
+	private long[] mergeCells(S2CellUnion cellUnion) {
+		long[] rangeMins = new long[cellUnion.size()];
+		long[] rangeMaxs = new long[cellUnion.size()];
+		for (int i = 0; i < cellUnion.size(); i++) {
+			S2CellId c = cellUnion.cellId(i);
+			rangeMins[i] = c.rangeMin().id();
+			rangeMaxs[i] = c.rangeMax().id();
+		}
+
+		return GeohashRangeMerger.merge(rangeMins, rangeMaxs, GeoDataManagerConfiguration.MERGE_THRESHOLD,
+				config.getRangeMergePolicy(), config.getHashKeyStrategy());
+	}
+
+	/**
+	 * Query Amazon DynamoDB in parallel and filter the result.
+	 * 
+	 * @param queryPlan
+	 *            Geohash ranges and their hash keys that will be used to query Amazon DynamoDB.
+	 * 
+	 * @param geoQueryRequest
+	 *            The queried area that will be used as a reference point for precise filtering.
+	 * 
+	 * @return Aggregated and filtered items returned from Amazon DynamoDB.
+	 */
+	private GeoQueryResult dispatchQueries(QueryPlan queryPlan, GeoQueryRequest geoQueryRequest) {
+		return waitFor(dispatchQueriesAsync(queryPlan, geoQueryRequest));
+	}
+
+	private GeoQueryResult dispatchQueries(QueryPlan queryPlan, GeoQueryRequest geoQueryRequest,
+			long timeoutInMillis) {
+		return waitFor(dispatchQueriesAsync(queryPlan, geoQueryRequest, timeoutInMillis));
+	}
+
+	/**
+	 * Wait for the result of a geo query, and rethrow its failure as an AmazonClientException.
+	 */
+	private <T> T waitFor(ListenableFuture<T> future) {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof AmazonClientException) {
+				throw (AmazonClientException) e.getCause();
+			}
+			throw new AmazonClientException("Querying Amazon DynamoDB failed.", e.getCause());
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new AmazonClientException("Querying Amazon DynamoDB failed.", e);
+		}
+	}
+
+	/**
+	 * Query Amazon DynamoDB in parallel without blocking and filter the result. Every geohash range is paged through
+	 * independently, and the returned future completes once all of them are exhausted or a page of one of them fails
+	 * and is not retried.
+	 * 
+	 * @param queryPlan
+	 *            Geohash ranges and their hash keys that will be used to query Amazon DynamoDB.
+	 * 
+	 * @param geoQueryRequest
+	 *            The queried area that will be used as a reference point for precise filtering.
+	 * 
+	 * @return Future of the aggregated and filtered items returned from Amazon DynamoDB.
+	 */
+	private ListenableFuture<GeoQueryResult> dispatchQueriesAsync(QueryPlan queryPlan,
+			GeoQueryRequest geoQueryRequest) {
+		if (geoQueryRequest.getPageSize() > 0) {
+			return dispatchPaginatedQueries(queryPlan, geoQueryRequest);
+		}
+
+		return dispatchQueriesAsync(queryPlan, geoQueryRequest, geoQueryRequest.getTimeoutInMillis());
+	}
+
+	/**
+	 * Query Amazon DynamoDB in parallel without blocking and filter the result. If the deadline expires first, the
+	 * returned future completes with the items retrieved so far and the ranges that were not covered.
+	 * 
+	 * @param queryPlan
+	 *            Geohash ranges and their hash keys that will be used to query Amazon DynamoDB.
+	 * 
+	 * @param geoQueryRequest
+	 *            The queried area that will be used as a reference point for precise filtering.
+	 * 
+	 * @param timeoutInMillis
+	 *            Deadline of the query in milliseconds, or 0 for no deadline.
+	 * 
+	 * @return Future of the aggregated and filtered items returned from Amazon DynamoDB.
+	 */
+	private ListenableFuture<GeoQueryResult> dispatchQueriesAsync(QueryPlan queryPlan,
+			GeoQueryRequest geoQueryRequest, long timeoutInMillis) {
+		BufferedGeoQuery geoQuery = new BufferedGeoQuery(geoQueryRequest, queryPlan.size());
+		startQueries(queryPlan, geoQuery);
+		scheduleDeadline(geoQuery, geoQuery.getFuture(), timeoutInMillis);
+
+		return geoQuery.getFuture();
+	}
+
+	/**
+	 * Query Amazon DynamoDB one page after the other until the page size of the request is reached, and return the
+	 * filtered items with a cursor to the next ones.
+	 * 
+	 * @param queryPlan
+	 *            Geohash ranges and their hash keys to query, unless the request has a cursor.
+	 * 
+	 * @param geoQueryRequest
+	 *            The queried area that will be used as a reference point for precise filtering.
+	 * 
+	 * @return Future of the filtered items of the page.
+	 */
+	private ListenableFuture<GeoQueryResult> dispatchPaginatedQueries(QueryPlan queryPlan,
+			GeoQueryRequest geoQueryRequest) {
+		QueryCursor queryCursor;
+		if (geoQueryRequest.getCursor() != null) {
+			queryCursor = QueryCursor.decode(geoQueryRequest.getCursor());
+		} else {
+			List<Map<String, AttributeValue>> exclusiveStartKeys = new ArrayList<Map<String, AttributeValue>>();
+			for (int i = 0; i < queryPlan.size(); i++) {
+				exclusiveStartKeys.add(null);
+			}
+			queryCursor = new QueryCursor(queryPlan, exclusiveStartKeys);
+		}
+
+		PaginatedGeoQuery geoQuery = new PaginatedGeoQuery(geoQueryRequest, queryCursor);
+		geoQuery.start();
+		scheduleDeadline(geoQuery, geoQuery.getFuture(), geoQueryRequest.getTimeoutInMillis());
+
+		return geoQuery.getFuture();
+	}
+
+	/**
+	 * Query the union of the geohash ranges of a group of requests sharing the same query request. Each page of a
+	 * merged range is filtered by the geo query of every request with a range within it.
+	 * 
+	 * @param group
+	 *            Indexes of the requests of the group.
+	 * 
+	 * @param queryPlans
+	 *            Plan of each request.
+	 * 
+	 * @param geoQueryRequests
+	 *            All requests of the batch.
+	 * 
+	 * @param geoQueries
+	 *            Array the geo query of each request of the group is stored to.
+	 */
+	private void dispatchBatchQueries(List<Integer> group, QueryPlan[] queryPlans,
+			List<? extends GeoQueryRequest> geoQueryRequests, BufferedGeoQuery[] geoQueries) {
+		int rangeCount = 0;
+		for (int i : group) {
+			rangeCount += queryPlans[i].size();
+		}
+
+		long[] rangeMins = new long[rangeCount];
+		long[] rangeMaxs = new long[rangeCount];
+		int size = 0;
+		for (int i : group) {
+			for (int j = 0; j < queryPlans[i].size(); j++) {
+				rangeMins[size] = queryPlans[i].getRangeMin(j);
+				rangeMaxs[size] = queryPlans[i].getRangeMax(j);
+				size++;
+			}
+		}
+
+		long[] ranges = GeohashRangeMerger.merge(rangeMins, rangeMaxs, GeoDataManagerConfiguration.MERGE_THRESHOLD,
+				config.getRangeMergePolicy(), config.getHashKeyStrategy());
+		QueryPlan.Builder builder = new QueryPlan.Builder();
+		for (int i = 0; i < ranges.length; i += 2) {
+			S2Manager.splitByHashKey(ranges[i], ranges[i + 1], config.getHashKeyStrategy(), builder);
+		}
+		QueryPlan sharedQueryPlan = builder.build();
+
+		// The merged ranges are disjoint and in ascending order, and each range of a plan is within one of them.
+		long[] sharedRangeMins = new long[sharedQueryPlan.size()];
+		for (int i = 0; i < sharedRangeMins.length; i++) {
+			sharedRangeMins[i] = sharedQueryPlan.getRangeMin(i);
+		}
+
+		List<List<BufferedGeoQuery>> subscribers = new ArrayList<List<BufferedGeoQuery>>();
+		for (int i = 0; i < sharedRangeMins.length; i++) {
+			subscribers.add(new ArrayList<BufferedGeoQuery>());
+		}
+
+		List<BufferedGeoQuery> members = new ArrayList<BufferedGeoQuery>();
+		for (int i : group) {
+			boolean[] subscribed = new boolean[sharedRangeMins.length];
+			int subscribedCount = 0;
+			for (int j = 0; j < queryPlans[i].size(); j++) {
+				int sharedIndex = Arrays.binarySearch(sharedRangeMins, queryPlans[i].getRangeMin(j));
+				if (sharedIndex < 0) {
+					sharedIndex = -sharedIndex - 2;
+				}
+				if (!subscribed[sharedIndex]) {
+					subscribed[sharedIndex] = true;
+					subscribedCount++;
+				}
+			}
+
+			geoQueries[i] = new BufferedGeoQuery(geoQueryRequests.get(i), sharedRangeMins.length, subscribedCount);
+			members.add(geoQueries[i]);
+			for (int j = 0; j < sharedRangeMins.length; j++) {
+				if (subscribed[j]) {
+					subscribers.get(j).add(geoQueries[i]);
+				}
+			}
+		}
+
+		BatchGeoQuery batchGeoQuery = new BatchGeoQuery(members, subscribers);
+		startQueries(sharedQueryPlan, batchGeoQuery);
+		for (int i = 0; i < sharedQueryPlan.size(); i++) {
+			for (BufferedGeoQuery geoQuery : subscribers.get(i)) {
+				geoQuery.rangeQueries[i] = batchGeoQuery.rangeQueries[i];
+			}
+		}
+
+		for (int i : group) {
+			scheduleDeadline(geoQueries[i], geoQueries[i].getFuture(), geoQueryRequests.get(i).getTimeoutInMillis());
+		}
+	}
+
+	/**
+	 * Complete the geo query with a partial result if it has not completed within the timeout.
+	 * 
+	 * @param geoQuery
+	 *            Geo query whose range queries have been started.
+	 * 
+	 * @param future
+	 *            Future of the result of the geo query.
+	 * 
+	 * @param timeoutInMillis
+	 *            Deadline of the query in milliseconds, or 0 for no deadline.
+	 */
+	private void scheduleDeadline(final GeoQuery geoQuery, ListenableFuture<?> future, long timeoutInMillis) {
+		if (timeoutInMillis <= 0 || geoQuery.isDone()) {
+			return;
+		}
+
+		final ScheduledFuture<?> deadline = config.getScheduledExecutorService().schedule(new Runnable() {
+			public void run() {
+				geoQuery.expire();
+			}
+		}, timeoutInMillis, TimeUnit.MILLISECONDS);
+
+		future.addListener(new Runnable() {
+			public void run() {
+				deadline.cancel(false);
+			}
+		}, MoreExecutors.sameThreadExecutor());
+	}
+
+	/**
+	 * Query Amazon DynamoDB in parallel and return the filtered items as soon as each page has been filtered.
+	 * 
+	 * @param queryPlan
+	 *            Geohash ranges and their hash keys that will be used to query Amazon DynamoDB.
+	 * 
+	 * @param geoQueryRequest
+	 *            The queried area that will be used as a reference point for precise filtering.
+	 * 
+	 * @return Iterator over the filtered items returned from Amazon DynamoDB.
+	 */
+	private GeoQueryIterator dispatchQueriesStreaming(QueryPlan queryPlan, GeoQueryRequest geoQueryRequest) {
+		StreamingGeoQuery geoQuery = new StreamingGeoQuery(geoQueryRequest, queryPlan.size(),
+				config.getQueryIteratorBufferSize());
+		startQueries(queryPlan, geoQuery);
+
+		return geoQuery;
+	}
+
+	private void startQueries(QueryPlan queryPlan, GeoQuery geoQuery) {
+		for (int i = 0; i < queryPlan.size(); i++) {
+			geoQuery.rangeQueries[i] = new GeohashRangeQuery(geoQuery, i, queryPlan.getHashKey(i),
+					queryPlan.getGeohashRange(i));
+		}
+
+		geoQuery.startRanges();
+	}
+
+	/**
+	 * Select the points within the queried area.
+	 * 
+	 * @param latitudes
+	 *            Latitudes in radians of the items returned by Amazon DynamoDB. It may contains points outside of the
+	 *            actual area queried.
+	 * 
+	 * @param longitudes
+	 *            Longitudes in radians of the items, in the same order.
+	 * 
+	 * @param geoQueryRequest
+	 *            Rectangle or radius query request.
+	 * 
+	 * @param selected
+	 *            Array the indexes of the points within the queried area are written to, in ascending order.
+	 * 
+	 * @return Number of selected points.
+	 */
+	private int filter(double[] latitudes, double[] longitudes, GeoQueryRequest geoQueryRequest, int[] selected) {
+		if (geoQueryRequest instanceof QueryRectangleRequest) {
+			S2LatLngRect latLngRect = S2Util.getBoundingLatLngRect(geoQueryRequest);
+			if (latLngRect != null) {
+				return PointFilter.filterByRectangle(latLngRect, latitudes, longitudes, selected);
+			}
+		} else if (geoQueryRequest instanceof QueryRadiusRequest) {
+			GeoPoint centerPoint = ((QueryRadiusRequest) geoQueryRequest).getCenterPoint();
+			S2LatLng centerLatLng = S2LatLng.fromDegrees(centerPoint.getLatitude(), centerPoint.getLongitude());
+
+			double radiusInMeter = ((QueryRadiusRequest) geoQueryRequest).getRadiusInMeter();
+			if (radiusInMeter > 0) {
+				return PointFilter.filterByRadius(centerLatLng, radiusInMeter, latitudes, longitudes, selected, null);
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Select the points within the radius of a radius or nearest query, nearest first.
+	 * 
+	 * @param latitudes
+	 *            Latitudes in radians of the items returned by Amazon DynamoDB. It may contains points outside of the
+	 *            actual area queried.
+	 * 
+	 * @param longitudes
+	 *            Longitudes in radians of the items, in the same order.
+	 * 
+	 * @param geoQueryRequest
+	 *            Radius or nearest query request.
+	 * 
+	 * @param selected
+	 *            Array the indexes of the points within the queried area are written to, nearest first.
+	 * 
+	 * @param distances
+	 *            Array the distances of the selected points are written to, in the same order.
+	 * 
+	 * @return Number of selected points.
+	 */
+	private int filterByDistance(double[] latitudes, double[] longitudes, GeoQueryRequest geoQueryRequest,
+			int[] selected, double[] distances) {
+		GeoPoint centerPoint;
+		double radiusInMeter;
+		if (geoQueryRequest instanceof QueryNearestRequest) {
+			centerPoint = ((QueryNearestRequest) geoQueryRequest).getCenterPoint();
+			radiusInMeter = ((QueryNearestRequest) geoQueryRequest).getMaxRadiusInMeter();
+		} else {
+			centerPoint = ((QueryRadiusRequest) geoQueryRequest).getCenterPoint();
+			radiusInMeter = ((QueryRadiusRequest) geoQueryRequest).getRadiusInMeter();
+		}
+		S2LatLng centerLatLng = S2LatLng.fromDegrees(centerPoint.getLatitude(), centerPoint.getLongitude());
+
+		int size = PointFilter.filterByRadius(centerLatLng, radiusInMeter, latitudes, longitudes, selected,
+				distances);
+		PointFilter.sortByDistance(selected, distances, size);
+
+		return size;
+	}
+
+	/**
+	 * @return true if the items of the geo query are sorted by distance.
+	 */
+	private static boolean isSortedByDistance(GeoQueryRequest geoQueryRequest) {
+		if (geoQueryRequest instanceof QueryRadiusRequest) {
+			return ((QueryRadiusRequest) geoQueryRequest).isSortedByDistance();
+		}
+
+		return geoQueryRequest instanceof QueryNearestRequest;
+	}
+
+	/**
+	 * Decode the coordinates of an item into the arrays in radians. The geohash, the leaf cell of the point, is decoded
+	 * without allocation unless GeoDataManager is configured to filter using GeoJSON.
+	 */
+	private void decodeLatLng(Map<String, AttributeValue> item, double[] latitudes, double[] longitudes, int index) {
+		S2LatLng latLng;
+		AttributeValue geohashValue = item.get(config.getGeohashAttributeName());
+		if (!config.isFilterUsingGeoJson() && geohashValue != null) {
+			long geohash = Long.parseLong(geohashValue.getN());
+			if (PointFilter.decodeLeafCell(geohash, latitudes, longitudes, index)) {
+				return;
+			}
+
+			latLng = new S2CellId(geohash).toLatLng();
+		} else {
+			String geoJson = item.get(config.getGeoJsonAttributeName()).getS();
+			GeoPoint geoPoint = GeoJsonMapper.geoPointFromString(geoJson);
+			latLng = S2LatLng.fromDegrees(geoPoint.getLatitude(), geoPoint.getLongitude());
+		}
+
+		latitudes[index] = latLng.latRadians();
+		longitudes[index] = latLng.lngRadians();
+	}
+
+	/**
+	 * Convert an item to a compact row, dropping the GeoJSON, geohash and hash key attributes.
+	 */
+	private GeoRow toRow(Map<String, AttributeValue> item, S2LatLng latLng) {
+		AttributeValue geohashValue = item.get(config.getGeohashAttributeName());
+		long geohash = geohashValue != null ? Long.parseLong(geohashValue.getN()) : S2CellId.fromLatLng(latLng).id();
+
+		String[] attributeNames = new String[item.size()];
+		AttributeValue[] attributeValues = new AttributeValue[item.size()];
+		int size = 0;
+		for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+			String attributeName = attribute.getKey();
+			if (!attributeName.equals(config.getGeoJsonAttributeName())
+					&& !attributeName.equals(config.getGeohashAttributeName())
+					&& !attributeName.equals(config.getHashKeyAttributeName())) {
+				attributeNames[size] = attributeName;
+				attributeValues[size] = attribute.getValue();
+				size++;
+			}
+		}
+
+		return new GeoRow(latLng.latDegrees(), latLng.lngDegrees(), geohash, Arrays.copyOf(attributeNames, size),
+				Arrays.copyOf(attributeValues, size));
+	}
+
+	private static <T> PriorityQueue<NearestItem<T>> createCandidates(int count) {
+		return new PriorityQueue<NearestItem<T>>(count + 1);
+	}
+
+	/**
+	 * Check whether the candidates are the nearest points, i.e. there are enough of them and none is farther than the
+	 * given distance.
+	 */
+	private static <T> boolean isNearestFound(PriorityQueue<NearestItem<T>> candidates, int count,
+			double distanceInMeter) {
+		return candidates.size() == count && candidates.peek().distanceInMeter <= distanceInMeter;
+	}
+
+	/**
+	 * Add the items of a ring, sorted by distance, to the candidates of a nearest query, keeping the nearest ones.
+	 */
+	private static <T> void offerNearest(PriorityQueue<NearestItem<T>> candidates, int count, List<T> ringItems,
+			List<Double> distanceInMeter) {
+		for (int i = 0; i < ringItems.size(); i++) {
+			if (isNearestFound(candidates, count, distanceInMeter.get(i))) {
+				return;
+			}
+
+			candidates.offer(new NearestItem<T>(ringItems.get(i), distanceInMeter.get(i)));
+			if (candidates.size() > count) {
+				candidates.poll();
+			}
+		}
+	}
+
+	/**
+	 * Add the candidates of a nearest query to the result, nearest first.
+	 */
+	private static <T> void addNearest(PriorityQueue<NearestItem<T>> candidates, List<T> items,
+			List<Double> distanceInMeter) {
+		List<NearestItem<T>> nearestItems = new ArrayList<NearestItem<T>>(candidates);
+		Collections.sort(nearestItems, Collections.reverseOrder());
+
+		for (NearestItem<T> nearestItem : nearestItems) {
+			items.add(nearestItem.item);
+			distanceInMeter.add(nearestItem.distanceInMeter);
+		}
+	}
+
+	/**
+	 * Candidate of a nearest query: a map of the item, or a GeoRow in compact result mode. The natural order puts the
+	 * farthest candidate first.
+	 */
+	private static class NearestItem<T> implements Comparable<NearestItem<T>> {
+		private T item;
+		private double distanceInMeter;
+
+		public NearestItem(T item, double distanceInMeter) {
+			this.item = item;
+			this.distanceInMeter = distanceInMeter;
+		}
+
+		public int compareTo(NearestItem<T> other) {
+			return Double.compare(other.distanceInMeter, distanceInMeter);
+		}
+	}
+
+	/**
+	 * State of a geo query shared by the queries of its geohash ranges.
+	 */
+	private abstract class GeoQuery {
+		protected GeoQueryRequest geoQueryRequest;
+		private AtomicInteger remainingRanges;
+		protected GeohashRangeQuery[] rangeQueries;
+
+		public GeoQuery(GeoQueryRequest geoQueryRequest, int rangeCount) {
+			this(geoQueryRequest, rangeCount, rangeCount);
+		}
+
+		/**
+		 * @param rangeCount
+		 *            Number of ranges the range queries are indexed by.
+		 * 
+		 * @param pendingRangeCount
+		 *            Number of ranges to complete before the geo query completes.
+		 */
+		public GeoQuery(GeoQueryRequest geoQueryRequest, int rangeCount, int pendingRangeCount) {
+			this.geoQueryRequest = geoQueryRequest;
+			remainingRanges = new AtomicInteger(pendingRangeCount);
+			rangeQueries = new GeohashRangeQuery[rangeCount];
+		}
+
+		/**
+		 * Filter a page returned for a range and hand the filtered items to onPage().
+		 */
+		public void handlePage(GeohashRangeQuery rangeQuery, QueryResult queryResult) {
+			List<Map<String, AttributeValue>> items = queryResult.getItems();
+			double[] latitudes = new double[items.size()];
+			double[] longitudes = new double[items.size()];
+			for (int i = 0; i < latitudes.length; i++) {
+				decodeLatLng(items.get(i), latitudes, longitudes, i);
+			}
+
+			int[] selected = new int[latitudes.length];
+			int selectedCount;
+			double[] distances = null;
+			if (isSortedByDistance()) {
+				distances = new double[latitudes.length];
+				selectedCount = filterByDistance(latitudes, longitudes, geoQueryRequest, selected, distances);
+				distances = Arrays.copyOf(distances, selectedCount);
+			} else {
+				selectedCount = filter(latitudes, longitudes, geoQueryRequest, selected);
+			}
+
+			ResultMode resultMode = getResultMode();
+			if (resultMode == ResultMode.COMPACT) {
+				List<GeoRow> rows = new ArrayList<GeoRow>(selectedCount);
+				for (int i = 0; i < selectedCount; i++) {
+					int index = selected[i];
+					rows.add(toRow(items.get(index), S2LatLng.fromRadians(latitudes[index], longitudes[index])));
+				}
+				onPage(rangeQuery, null, null, rows, distances);
+			} else {
+				List<Map<String, AttributeValue>> filteredItems = new ArrayList<Map<String, AttributeValue>>(
+						selectedCount);
+				for (int i = 0; i < selectedCount; i++) {
+					filteredItems.add(items.get(selected[i]));
+				}
+				onPage(rangeQuery, resultMode == ResultMode.FULL ? queryResult : null, filteredItems, null, distances);
+			}
+		}
+
+		/**
+		 * Called by handlePage() for every page of every range, possibly from several threads at once. The pages of a
+		 * range are handled one at a time, in order unless the geo query pages eagerly. Geo queries that override
+		 * handlePage() to hand the pages on do not collect anything here.
+		 * 
+		 * @param queryResult
+		 *            Raw page, or null if the result mode does not retain it.
+		 * 
+		 * @param filteredItems
+		 *            Filtered items, or null if the result mode is ResultMode.COMPACT.
+		 * 
+		 * @param rows
+		 *            Filtered items, if the result mode is ResultMode.COMPACT. Otherwise null.
+		 * 
+		 * @param distances
+		 *            Distances of the filtered items if they are sorted by distance. Otherwise null.
+		 */
+		public void onPage(GeohashRangeQuery rangeQuery, QueryResult queryResult,
+				List<Map<String, AttributeValue>> filteredItems, List<GeoRow> rows, double[] distances) {
+		}
+
+		public ResultMode getResultMode() {
+			return geoQueryRequest.getResultMode();
+		}
+
+		/**
+		 * @return true if the filtered items of each page are sorted by distance.
+		 */
+		public boolean isSortedByDistance() {
+			return GeoDataManager.isSortedByDistance(geoQueryRequest);
+		}
+
+		/**
+		 * @return Priority class of the query requests sent for the ranges.
+		 */
+		public QueryPriority getPriority() {
+			return geoQueryRequest.getPriority();
+		}
+
+		/**
+		 * @return Limit of the next query request sent for a range, or null to keep the limit of the query request of
+		 *         the geo query.
+		 */
+		public Integer getPageLimit() {
+			return null;
+		}
+
+		/**
+		 * @return true if the next page of a range is always queried as soon as the previous one returns, while the
+		 *         previous one is handled. A range whose first page is not the last one may then be split into
+		 *         segments paged through in parallel. Geo queries that decide when to query the next page of a range
+		 *         return false.
+		 */
+		public boolean isPagingEager() {
+			return true;
+		}
+
+		/**
+		 * Query the first page of the ranges, once the range queries have been created.
+		 */
+		public void startRanges() {
+			for (GeohashRangeQuery rangeQuery : rangeQueries) {
+				rangeQuery.queryNextPage(null);
+			}
+		}
+
+		/**
+		 * Called when a range has more pages. The next page is queried right away unless a subclass decides
+		 * otherwise.
+		 */
+		public void onMorePages(GeohashRangeQuery rangeQuery, Map<String, AttributeValue> lastEvaluatedKey) {
+			rangeQuery.queryNextPage(lastEvaluatedKey);
+		}
+
+		public void onRangeCompleted(GeohashRangeQuery rangeQuery) {
+			if (remainingRanges.decrementAndGet() == 0) {
+				onCompleted();
+			}
+		}
+
+		protected abstract void onCompleted();
+
+		public abstract void onError(Exception e);
+
+		/**
+		 * Called when the deadline of the geo query expires.
+		 */
+		public void expire() {
+		}
+
+		/**
+		 * @return true if the geo query has completed, failed or has been cancelled, so that pending ranges stop
+		 *         paging.
+		 */
+		public abstract boolean isDone();
+	}
+
+	/**
+	 * Geo query that collects all items into a GeoQueryResult. Each range appends its pages to its own buffer without
+	 * locking, and the buffers are combined once, when the geo query completes. If the items are sorted by distance,
+	 * each page is a sorted run and the runs are merged.
+	 */
+	private class BufferedGeoQuery extends GeoQuery {
+		private RangeBuffer[] buffers;
+		private SettableFuture<GeoQueryResult> future;
+		private AtomicBoolean completing = new AtomicBoolean();
+
+		// Limit of the request, or 0, and the number of filtered items retrieved so far.
+		private int limit;
+		private AtomicInteger itemCount = new AtomicInteger();
+
+		// With a limit, the ranges nearest first and the number of ranges started so far.
+		private Integer[] rangeOrder;
+		private AtomicInteger startedRanges;
+
+		public BufferedGeoQuery(GeoQueryRequest geoQueryRequest, int rangeCount) {
+			this(geoQueryRequest, rangeCount, rangeCount);
+		}
+
+		public BufferedGeoQuery(GeoQueryRequest geoQueryRequest, int rangeCount, int pendingRangeCount) {
+			super(geoQueryRequest, rangeCount, pendingRangeCount);
+			future = SettableFuture.create();
+
+			// The count of a nearest query is its limit, and a ring must not stop before the nearest items are found.
+			if (!(geoQueryRequest instanceof QueryNearestRequest)) {
+				limit = geoQueryRequest.getLimit();
+			}
+
+			buffers = new RangeBuffer[rangeCount];
+			for (int i = 0; i < rangeCount; i++) {
+				buffers[i] = new RangeBuffer();
+			}
+
+			if (pendingRangeCount == 0) {
+				complete(Collections.<GeohashRange> emptyList());
+			}
+		}
+
+		@Override
+		public void onPage(GeohashRangeQuery rangeQuery, QueryResult queryResult,
+				List<Map<String, AttributeValue>> filteredItems, List<GeoRow> rows, double[] distances) {
+			buffers[rangeQuery.index].add(queryResult, filteredItems, rows, distances);
+
+			if (limit > 0) {
+				int size = rows != null ? rows.size() : filteredItems.size();
+				if (itemCount.addAndGet(size) >= limit) {
+					// The pending ranges stop paging once the future is done.
+					complete(Collections.<GeohashRange> emptyList());
+				}
+			}
+		}
+
+		@Override
+		public boolean isPagingEager() {
+			// The segments of a split range would read items beyond the limit.
+			return limit <= 0;
+		}
+
+		@Override
+		public Integer getPageLimit() {
+			if (limit <= 0) {
+				return null;
+			}
+
+			// Not the remaining count: the limit of a query request applies before the area filter, so pages of a few
+			// items would mostly hold items outside of the area and take a round trip each.
+			return limit;
+		}
+
+		/**
+		 * Without a limit, start all ranges. With a limit, start the ranges nearest to the center of the queried area,
+		 * and start another one whenever a range completes.
+		 */
+		@Override
+		public void startRanges() {
+			S2LatLng centerLatLng = null;
+			if (geoQueryRequest instanceof QueryRadiusRequest) {
+				GeoPoint centerPoint = ((QueryRadiusRequest) geoQueryRequest).getCenterPoint();
+				centerLatLng = S2LatLng.fromDegrees(centerPoint.getLatitude(), centerPoint.getLongitude());
+			} else if (geoQueryRequest instanceof QueryRectangleRequest) {
+				centerLatLng = S2Util.getBoundingLatLngRect(geoQueryRequest).getCenter();
+			}
+
+			if (limit <= 0 || centerLatLng == null || rangeQueries.length <= LIMITED_RANGE_CONCURRENCY) {
+				super.startRanges();
+				return;
+			}
+
+			final double[] rangeDistances = new double[rangeQueries.length];
+			Integer[] order = new Integer[rangeQueries.length];
+			for (int i = 0; i < rangeQueries.length; i++) {
+				GeohashRange range = rangeQueries[i].range;
+				rangeDistances[i] = S2Manager.getDistance(range.getRangeMin(), range.getRangeMax(), centerLatLng);
+				order[i] = i;
+			}
+
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					return Double.compare(rangeDistances[a], rangeDistances[b]);
+				}
+			});
+
+			rangeOrder = order;
+			startedRanges = new AtomicInteger();
+			for (int i = 0; i < LIMITED_RANGE_CONCURRENCY; i++) {
+				startNextRange();
+			}
+		}
+
+		@Override
+		public void onRangeCompleted(GeohashRangeQuery rangeQuery) {
+			// In a batch, the ranges are started by the batch geo query.
+			if (rangeOrder != null) {
+				startNextRange();
+			}
+
+			super.onRangeCompleted(rangeQuery);
+		}
+
+		private void startNextRange() {
+			int next = startedRanges.getAndIncrement();
+			if (next < rangeOrder.length) {
+				rangeQueries[rangeOrder[next]].queryNextPage(null);
+			}
+		}
+
+		@Override
+		protected void onCompleted() {
+			complete(Collections.<GeohashRange> emptyList());
+		}
+
+		/**
+		 * Complete the geo query with the items retrieved so far, and abandon the ranges that are still pending.
+		 */
+		@Override
+		public void expire() {
+			if (future.isDone()) {
+				return;
+			}
+
+			// The uncovered ranges are taken before the pages, so a page handled in between is both returned and
+			// reported as uncovered, but never lost.
+			List<GeohashRange> uncoveredRanges = new ArrayList<GeohashRange>();
+			for (GeohashRangeQuery rangeQuery : rangeQueries) {
+				// In a batch, the geo query does not have all ranges.
+				if (rangeQuery != null && !rangeQuery.completed) {
+					uncoveredRanges.add(rangeQuery.getUncoveredRange());
+				}
+			}
+
+			complete(uncoveredRanges);
+		}
+
+		private void complete(List<GeohashRange> uncoveredRanges) {
+			// The deadline, the last range and the limit may complete the geo query at the same time.
+			if (!completing.compareAndSet(false, true)) {
+				return;
+			}
+
+			List<QueryResult> queryResults = new ArrayList<QueryResult>();
+			List<List<Map<String, AttributeValue>>> itemPages = new ArrayList<List<Map<String, AttributeValue>>>();
+			List<List<GeoRow>> rowPages = new ArrayList<List<GeoRow>>();
+			List<double[]> distancePages = new ArrayList<double[]>();
+
+			// Snapshot of the pages published so far; ranges still paging may add more pages afterwards. The raw
+			// pages, the items and the rows are null unless the result mode retains them.
+			for (RangeBuffer buffer : buffers) {
+				for (BufferedPage page : buffer.getPages()) {
+					if (page.queryResult != null) {
+						queryResults.add(page.queryResult);
+					}
+					if (page.items != null) {
+						itemPages.add(page.items);
+					}
+					if (page.rows != null) {
+						rowPages.add(page.rows);
+					}
+					distancePages.add(page.distances);
+				}
+			}
+
+			List<Double> distances = null;
+			if (isSortedByDistance()) {
+				distances = new ArrayList<Double>();
+			} else {
+				distancePages = null;
+			}
+
+			GeoQueryResult geoQueryResult;
+			if (getResultMode() == ResultMode.COMPACT) {
+				geoQueryResult = new GeoQueryResult(new ArrayList<Map<String, AttributeValue>>(), queryResults);
+				geoQueryResult.setRows(truncate(combinePages(rowPages, distancePages, distances)));
+			} else {
+				geoQueryResult = new GeoQueryResult(truncate(combinePages(itemPages, distancePages, distances)),
+						queryResults);
+			}
+			geoQueryResult.setDistanceInMeter(distances != null ? truncate(distances) : null);
+			geoQueryResult.getUncoveredRanges().addAll(uncoveredRanges);
+
+			future.set(geoQueryResult);
+		}
+
+		/**
+		 * Concatenate the pages, or merge them by distance if distancePages is not null.
+		 */
+		private <T> List<T> combinePages(List<List<T>> pages, List<double[]> distancePages, List<Double> distances) {
+			int size = 0;
+			for (List<T> page : pages) {
+				size += page.size();
+			}
+
+			List<T> combined = new ArrayList<T>(size);
+			if (distancePages != null) {
+				DistanceRunMerger.merge(pages, distancePages, combined, distances);
+			} else {
+				for (List<T> page : pages) {
+					combined.addAll(page);
+				}
+			}
+
+			return combined;
+		}
+
+		/**
+		 * Remove the items beyond the limit, if any. Pages handled concurrently may exceed it.
+		 */
+		private <T> List<T> truncate(List<T> list) {
+			if (limit <= 0 || list.size() <= limit) {
+				return list;
+			}
+
+			return new ArrayList<T>(list.subList(0, limit));
+		}
+
+		@Override
+		public void onError(Exception e) {
+			// The first error completes the future, the pending ranges stop paging.
+			future.setException(new AmazonClientException("Querying Amazon DynamoDB failed.", e));
+		}
+
+		@Override
+		public boolean isDone() {
+			return future.isDone();
+		}
+
+		public ListenableFuture<GeoQueryResult> getFuture() {
+			return future;
+		}
+	}
+
+	/**
+	 * Geo query over the merged ranges of a batch. It does not collect anything itself; each page is handed to the geo
+	 * queries of the requests with a range within the merged range, which filter it for their own area.
+	 */
+	private class BatchGeoQuery extends GeoQuery {
+		private List<BufferedGeoQuery> members;
+		private List<List<BufferedGeoQuery>> subscribers;
+
+		public BatchGeoQuery(List<BufferedGeoQuery> members, List<List<BufferedGeoQuery>> subscribers) {
+			super(members.get(0).geoQueryRequest, subscribers.size());
+			this.members = members;
+			this.subscribers = subscribers;
+		}
+
+		@Override
+		public void handlePage(GeohashRangeQuery rangeQuery, QueryResult queryResult) {
+			for (BufferedGeoQuery geoQuery : subscribers.get(rangeQuery.index)) {
+				if (geoQuery.isDone()) {
+					continue;
+				}
+
+				try {
+					geoQuery.handlePage(rangeQuery, queryResult);
+				} catch (Exception e) {
+					geoQuery.onError(e);
+				}
+			}
+		}
+
+		@Override
+		public QueryPriority getPriority() {
+			QueryPriority priority = QueryPriority.BATCH;
+			for (BufferedGeoQuery geoQuery : members) {
+				if (geoQuery.getPriority().ordinal() < priority.ordinal()) {
+					priority = geoQuery.getPriority();
+				}
+			}
+
+			return priority;
+		}
+
+		@Override
+		public void onRangeCompleted(GeohashRangeQuery rangeQuery) {
+			for (BufferedGeoQuery geoQuery : subscribers.get(rangeQuery.index)) {
+				geoQuery.onRangeCompleted(rangeQuery);
+			}
+			super.onRangeCompleted(rangeQuery);
+		}
+
+		@Override
+		protected void onCompleted() {
+		}
+
+		@Override
+		public void onError(Exception e) {
+			for (BufferedGeoQuery geoQuery : members) {
+				geoQuery.onError(e);
+			}
+		}
+
+		/**
+		 * @return true once the geo queries of all requests are done, so that a request completing early does not stop
+		 *         the ranges it shares with the others.
+		 */
+		@Override
+		public boolean isDone() {
+			for (BufferedGeoQuery geoQuery : members) {
+				if (!geoQuery.isDone()) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+	}
+
+	/**
+	 * Geo query that reads the ranges of a cursor one page after the other until the page size is reached. Only one
+	 * page is in flight at a time, so the position of the geo query is a range and the ExclusiveStartKey to resume it
+	 * from. The items are collected in the order of the index and converted to the requested result mode at the end.
+	 * Each page is limited to a few times the number of items still missing, so that little is read past the cut.
+	 */
+	private class PaginatedGeoQuery extends GeoQuery {
+		private QueryCursor queryCursor;
+		private SettableFuture<GeoQueryResult> future;
+
+		private List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+		private List<QueryResult> queryResults = new ArrayList<QueryResult>();
+
+		// Range to query next, or the number of ranges once all of them are read, and the key to resume it from.
+		private int rangeIndex;
+		private Map<String, AttributeValue> exclusiveStartKey;
+
+		// Key to resume from if the current page has been cut at the page size.
+		private Map<String, AttributeValue> cutKey;
+
+		// Limit of the page in flight. It is set before the page is queried, so that send() does not take the lock.
+		private volatile int pageLimit;
+
+		public PaginatedGeoQuery(GeoQueryRequest geoQueryRequest, QueryCursor queryCursor) {
+			super(geoQueryRequest, queryCursor.getQueryPlan().size());
+			this.queryCursor = queryCursor;
+			future = SettableFuture.create();
+		}
+
+		public synchronized void start() {
+			if (rangeQueries.length > 0) {
+				exclusiveStartKey = queryCursor.getExclusiveStartKey(0);
+			}
+			next();
+		}
+
+		@Override
+		public ResultMode getResultMode() {
+			return ResultMode.LEAN;
+		}
+
+		@Override
+		public boolean isSortedByDistance() {
+			return false;
+		}
+
+		@Override
+		public boolean isPagingEager() {
+			return false;
+		}
+
+		@Override
+		public Integer getPageLimit() {
+			return pageLimit;
+		}
+
+		@Override
+		public synchronized void handlePage(GeohashRangeQuery rangeQuery, QueryResult queryResult) {
+			if (isDone()) {
+				return;
+			}
+
+			if (geoQueryRequest.getResultMode() == ResultMode.FULL) {
+				queryResults.add(queryResult);
+			}
+
+			cutKey = null;
+			super.handlePage(rangeQuery, queryResult);
+
+			if (cutKey != null) {
+				exclusiveStartKey = cutKey;
+			} else if (queryResult.getLastEvaluatedKey() != null) {
+				exclusiveStartKey = queryResult.getLastEvaluatedKey();
+			} else {
+				rangeIndex++;
+				exclusiveStartKey = rangeIndex < rangeQueries.length ? queryCursor.getExclusiveStartKey(rangeIndex)
+						: null;
+			}
+		}
+
+		@Override
+		public void onPage(GeohashRangeQuery rangeQuery, QueryResult queryResult,
+				List<Map<String, AttributeValue>> filteredItems, List<GeoRow> rows, double[] distances) {
+			int remaining = geoQueryRequest.getPageSize() - items.size();
+			if (filteredItems.size() > remaining) {
+				Map<String, AttributeValue> key = getExclusiveStartKey(filteredItems.get(remaining - 1));
+				if (key != null) {
+					items.addAll(filteredItems.subList(0, remaining));
+					cutKey = key;
+					return;
+				}
+			}
+
+			items.addAll(filteredItems);
+		}
+
+		@Override
+		public synchronized void onMorePages(GeohashRangeQuery rangeQuery,
+				Map<String, AttributeValue> lastEvaluatedKey) {
+			next();
+		}
+
+		@Override
+		public synchronized void onRangeCompleted(GeohashRangeQuery rangeQuery) {
+			next();
+		}
+
+		/**
+		 * Query the page at the current position, or complete the geo query if the page size is reached or all ranges
+		 * have been read.
+		 */
+		private void next() {
+			if (isDone()) {
+				return;
+			}
+
+			if (items.size() >= geoQueryRequest.getPageSize() || rangeIndex == rangeQueries.length) {
+				complete(false);
+				return;
+			}
+
+			if (rangeQueries[rangeIndex] == null) {
+				QueryPlan queryPlan = queryCursor.getQueryPlan();
+				rangeQueries[rangeIndex] = new GeohashRangeQuery(this, rangeIndex, queryPlan.getHashKey(rangeIndex),
+						queryPlan.getGeohashRange(rangeIndex));
+			}
+
+			long remaining = geoQueryRequest.getPageSize() - items.size();
+			pageLimit = (int) Math.min(remaining * PAGINATED_PAGE_LIMIT_FACTOR, Integer.MAX_VALUE);
+			rangeQueries[rangeIndex].queryNextPage(exclusiveStartKey);
+		}
+
+		@Override
+		protected void onCompleted() {
+		}
+
+		/**
+		 * Complete the geo query with the items retrieved so far. The cursor resumes from the page in flight.
+		 */
+		@Override
+		public synchronized void expire() {
+			if (!isDone()) {
+				complete(true);
+			}
+		}
+
+		private void complete(boolean expired) {
+			QueryPlan queryPlan = queryCursor.getQueryPlan();
+			List<GeohashRange> uncoveredRanges = new ArrayList<GeohashRange>();
+			String nextCursor = null;
+			if (rangeIndex < queryPlan.size()) {
+				QueryPlan.Builder builder = new QueryPlan.Builder();
+				List<Map<String, AttributeValue>> exclusiveStartKeys = new ArrayList<Map<String, AttributeValue>>();
+				for (int i = rangeIndex; i < queryPlan.size(); i++) {
+					builder.add(queryPlan.getHashKey(i), queryPlan.getRangeMin(i), queryPlan.getRangeMax(i));
+					exclusiveStartKeys.add(i == rangeIndex ? exclusiveStartKey : queryCursor.getExclusiveStartKey(i));
+				}
+				QueryCursor nextQueryCursor = new QueryCursor(builder.build(), exclusiveStartKeys);
+				nextCursor = nextQueryCursor.encode();
+
+				if (expired) {
+					for (int i = 0; i < nextQueryCursor.getQueryPlan().size(); i++) {
+						uncoveredRanges.add(getUncoveredRange(nextQueryCursor, i));
+					}
+				}
+			}
+
+			int size = items.size();
+			double[] latitudes = new double[size];
+			double[] longitudes = new double[size];
+			for (int i = 0; i < size; i++) {
+				decodeLatLng(items.get(i), latitudes, longitudes, i);
+			}
+
+			int[] selected = new int[size];
+			for (int i = 0; i < size; i++) {
+				selected[i] = i;
+			}
+
+			List<Double> distanceInMeter = null;
+			if (GeoDataManager.isSortedByDistance(geoQueryRequest)) {
+				// The items are within the radius, so the filter only sorts them.
+				double[] distances = new double[size];
+				size = filterByDistance(latitudes, longitudes, geoQueryRequest, selected, distances);
+				distanceInMeter = new ArrayList<Double>(size);
+				for (int i = 0; i < size; i++) {
+					distanceInMeter.add(distances[i]);
+				}
+			}
+
+			GeoQueryResult geoQueryResult;
+			if (geoQueryRequest.getResultMode() == ResultMode.COMPACT) {
+				List<GeoRow> rows = new ArrayList<GeoRow>(size);
+				for (int i = 0; i < size; i++) {
+					int index = selected[i];
+					rows.add(toRow(items.get(index), S2LatLng.fromRadians(latitudes[index], longitudes[index])));
+				}
+				geoQueryResult = new GeoQueryResult(new ArrayList<Map<String, AttributeValue>>(), queryResults);
+				geoQueryResult.setRows(rows);
+			} else {
+				List<Map<String, AttributeValue>> resultItems = new ArrayList<Map<String, AttributeValue>>(size);
+				for (int i = 0; i < size; i++) {
+					resultItems.add(items.get(selected[i]));
+				}
+				geoQueryResult = new GeoQueryResult(resultItems, queryResults);
+			}
+			geoQueryResult.setDistanceInMeter(distanceInMeter);
+			geoQueryResult.getUncoveredRanges().addAll(uncoveredRanges);
+			geoQueryResult.setNextCursor(nextCursor);
+
+			future.set(geoQueryResult);
+		}
+
+		/**
+		 * @return Key of the item to resume a range after it, or null if the key attributes were not retrieved.
+		 */
+		private Map<String, AttributeValue> getExclusiveStartKey(Map<String, AttributeValue> item) {
+			String[] keyAttributeNames = { config.getHashKeyAttributeName(), config.getRangeKeyAttributeName(),
+					config.getGeohashAttributeName() };
+
+			Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+			for (String keyAttributeName : keyAttributeNames) {
+				AttributeValue keyAttributeValue = item.get(keyAttributeName);
+				if (keyAttributeValue == null) {
+					return null;
+				}
+				key.put(keyAttributeName, keyAttributeValue);
+			}
+
+			return key;
+		}
+
+		/**
+		 * @return Range of a cursor, starting from the geohash of its ExclusiveStartKey if it has one.
+		 */
+		private GeohashRange getUncoveredRange(QueryCursor queryCursor, int index) {
+			long rangeMin = queryCursor.getQueryPlan().getRangeMin(index);
+			Map<String, AttributeValue> key = queryCursor.getExclusiveStartKey(index);
+			if (key != null && key.get(config.getGeohashAttributeName()) != null) {
+				rangeMin = Long.parseLong(key.get(config.getGeohashAttributeName()).getN());
+			}
+
+			return new GeohashRange(rangeMin, queryCursor.getQueryPlan().getRangeMax(index));
+		}
+
+		@Override
+		public void onError(Exception e) {
+			future.setException(new AmazonClientException("Querying Amazon DynamoDB failed.", e));
+		}
+
+		@Override
+		public boolean isDone() {
+			return future.isDone();
+		}
+
+		public ListenableFuture<GeoQueryResult> getFuture() {
+			return future;
+		}
+	}
+
+	/**
+	 * Pages of a single range. Only the thread handling the current page of the range appends to the buffer. Each page
+	 * is an immutable node linked to the previous one, and the volatile last page publishes it together with all
+	 * previous pages to the thread that completes the geo query.
+	 */
+	private static class RangeBuffer {
+		private volatile BufferedPage lastPage;
+
+		public void add(QueryResult queryResult, List<Map<String, AttributeValue>> items, List<GeoRow> rows,
+				double[] distances) {
+			lastPage = new BufferedPage(queryResult, items, rows, distances, lastPage);
+		}
+
+		/**
+		 * @return The pages published so far, in the order they were added.
+		 */
+		public List<BufferedPage> getPages() {
+			List<BufferedPage> pages = new ArrayList<BufferedPage>();
+			for (BufferedPage page = lastPage; page != null; page = page.previous) {
+				pages.add(page);
+			}
+			Collections.reverse(pages);
+
+			return pages;
+		}
+	}
+
+	private static class BufferedPage {
+		private final QueryResult queryResult;
+		private final List<Map<String, AttributeValue>> items;
+		private final List<GeoRow> rows;
+		private final double[] distances;
+		private final BufferedPage previous;
+
+		public BufferedPage(QueryResult queryResult, List<Map<String, AttributeValue>> items, List<GeoRow> rows,
+				double[] distances, BufferedPage previous) {
+			this.queryResult = queryResult;
+			this.items = items;
+			this.rows = rows;
+			this.distances = distances;
+			this.previous = previous;
+		}
+	}
+
+	/**
+	 * Geo query that hands the filtered items of each page to the consumer as soon as they are available. At most
+	 * bufferSize pages are buffered or in flight, including the first pages of the ranges; the other ranges wait until
+	 * the consumer has taken a buffered page, so no further pages are read if the consumer stops.
+	 */
+	private class StreamingGeoQuery extends GeoQuery implements GeoQueryIterator {
+		private final Object lock = new Object();
+		private final int bufferSize;
+
+		private Queue<List<Map<String, AttributeValue>>> pages = new LinkedList<List<Map<String, AttributeValue>>>();
+		private Queue<Runnable> waitingRanges = new LinkedList<Runnable>();
+		private int inFlightCount;
+		private Iterator<Map<String, AttributeValue>> current;
+
+		private boolean completed;
+		private boolean closed;
+		private Exception error;
+
+		public StreamingGeoQuery(GeoQueryRequest geoQueryRequest, int rangeCount, int bufferSize) {
+			super(geoQueryRequest, rangeCount);
+			this.bufferSize = Math.max(bufferSize, 1);
+
+			if (rangeCount == 0) {
+				completed = true;
+			}
+		}
+
+		@Override
+		public void startRanges() {
+			for (GeohashRangeQuery rangeQuery : rangeQueries) {
+				requestPage(rangeQuery, null);
+			}
+		}
+
+		@Override
+		public void onPage(GeohashRangeQuery rangeQuery, QueryResult queryResult,
+				List<Map<String, AttributeValue>> filteredItems, List<GeoRow> rows, double[] distances) {
+			// The waiting ranges are started once the range is done with the page, outside of the range lock.
+			synchronized (lock) {
+				inFlightCount--;
+				if (!closed && !filteredItems.isEmpty()) {
+					pages.add(filteredItems);
+					lock.notifyAll();
+				}
+			}
+		}
+
+		@Override
+		public ResultMode getResultMode() {
+			// The iterator returns maps and does not expose the raw pages.
+			return ResultMode.LEAN;
+		}
+
+		@Override
+		public boolean isPagingEager() {
+			// Each range queries its next page only once the buffer has room.
+			return false;
+		}
+
+		@Override
+		public void onMorePages(GeohashRangeQuery rangeQuery, Map<String, AttributeValue> lastEvaluatedKey) {
+			requestPage(rangeQuery, lastEvaluatedKey);
+		}
+
+		@Override
+		public void onRangeCompleted(GeohashRangeQuery rangeQuery) {
+			// The last page of the range may have been empty, which leaves room for another range.
+			runAll(pollReadyRanges());
+			super.onRangeCompleted(rangeQuery);
+		}
+
+		/**
+		 * Queue the next page of the range, and query the queued pages the buffer has room for.
+		 */
+		private void requestPage(final GeohashRangeQuery rangeQuery,
+				final Map<String, AttributeValue> exclusiveStartKey) {
+			synchronized (lock) {
+				if (closed) {
+					return;
+				}
+
+				waitingRanges.add(new Runnable() {
+					public void run() {
+						rangeQuery.queryNextPage(exclusiveStartKey);
+					}
+				});
+			}
+
+			runAll(pollReadyRanges());
+		}
+
+		/**
+		 * @return The waiting ranges that fit into the buffer, counted as in flight. They must be run without holding
+		 *         the lock.
+		 */
+		private List<Runnable> pollReadyRanges() {
+			synchronized (lock) {
+				List<Runnable> readyRanges = new ArrayList<Runnable>();
+				while (!waitingRanges.isEmpty() && pages.size() + inFlightCount < bufferSize) {
+					readyRanges.add(waitingRanges.poll());
+					inFlightCount++;
+				}
+
+				return readyRanges;
+			}
+		}
+
+		private void runAll(List<Runnable> runnables) {
+			for (Runnable runnable : runnables) {
+				runnable.run();
+			}
+		}
+
+		@Override
+		protected void onCompleted() {
+			synchronized (lock) {
+				completed = true;
+				lock.notifyAll();
+			}
+		}
+
+		@Override
+		public void onError(Exception e) {
+			synchronized (lock) {
+				if (error == null) {
+					error = e;
+				}
+				waitingRanges.clear();
+				lock.notifyAll();
+			}
+		}
+
+		@Override
+		public boolean isDone() {
+			synchronized (lock) {
+				return closed || error != null;
+			}
+		}
+
+		public boolean hasNext() {
+			while (true) {
+				synchronized (lock) {
+					if (current != null && current.hasNext()) {
+						return true;
+					}
+
+					if (!pages.isEmpty()) {
+						current = pages.poll().iterator();
+					} else if (error != null) {
+						throw new AmazonClientException("Querying Amazon DynamoDB failed.", error);
+					} else if (completed || closed) {
+						return false;
+					} else {
+						try {
+							lock.wait();
+						} catch (InterruptedException e) {
+							close();
+							Thread.currentThread().interrupt();
+							throw new AmazonClientException("Querying Amazon DynamoDB failed.", e);
+						}
+						continue;
+					}
+				}
+
+				// A page has been taken from the buffer, so a waiting range can query its next page.
+				runAll(pollReadyRanges());
+			}
+		}
+
+		public Map<String, AttributeValue> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			return current.next();
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() {
+			synchronized (lock) {
+				closed = true;
+				pages.clear();
+				waitingRanges.clear();
+				current = null;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Pages through a geohash range. Each page is requested without blocking. If the geo query pages eagerly, the next
+	 * page is requested as soon as a page returns, before the page is handled, so reading and filtering overlap; if the
+	 * first page is not the last one, the rest of the range is split into segments that are paged through in parallel
+	 * instead. Otherwise the geo query requests the next page when it needs it. The pages of a range are handled one at
+	 * a time, not necessarily in order.
+	 * */
+	private class GeohashRangeQuery {
+		private GeoQuery geoQuery;
+		private int index;
+		private long hashKey;
+		private GeohashRange range;
+		private long itemCount;
+
+		// Smallest geohash that may still be returned by the next pages. It only moves past a page of the unsplit
+		// range once that page and the pages before it have been handled; the segments of a split range do not move it.
+		private volatile long nextGeohash;
+		private volatile boolean completed;
+
+		// Number of pages of the unsplit range handled in order, and the next geohash after the pages handled out of
+		// order, by page index. Guarded by this.
+		private volatile int handledPages;
+		private Map<Integer, Long> handledPageEnds = new HashMap<Integer, Long>();
+
+		// Pages requested or being handled.
+		private AtomicInteger pendingPages = new AtomicInteger(1);
+
+		public GeohashRangeQuery(GeoQuery geoQuery, int index, long hashKey, GeohashRange range) {
+			this.geoQuery = geoQuery;
+			this.index = index;
+			this.hashKey = hashKey;
+			this.range = range;
+			nextGeohash = range.getRangeMin();
+		}
+
+		/**
+		 * @return Part of the range whose items have not been retrieved yet. Once the range is split, it may include
+		 *         items already retrieved by the segments.
+		 */
+		public GeohashRange getUncoveredRange() {
+			return new GeohashRange(nextGeohash, range.getRangeMax());
+		}
+
+		public void queryNextPage(Map<String, AttributeValue> exclusiveStartKey) {
+			if (geoQuery.isDone()) {
+				return;
+			}
+
+			// Without eager paging, the previous page has been handled before the next one is requested.
+			new PageRequest(range, exclusiveStartKey, handledPages).submit(false);
+		}
+
+		/**
+		 * @param pageIndex
+		 *            Index of the page within the unsplit range, or -1 for a page of a segment.
+		 */
+		private void onPage(GeohashRange segment, int pageIndex, QueryResult queryResult) {
+			if (geoQuery.isDone()) {
+				return;
+			}
+
+			// Request the next page before handling this one, so that the round trip overlaps the filtering.
+			Map<String, AttributeValue> lastEvaluatedKey = queryResult.getLastEvaluatedKey();
+			boolean eager = geoQuery.isPagingEager();
+			if (lastEvaluatedKey != null && eager) {
+				if (pageIndex < 0 || !trySplit(lastEvaluatedKey)) {
+					pendingPages.incrementAndGet();
+					new PageRequest(segment, lastEvaluatedKey, pageIndex < 0 ? -1 : pageIndex + 1).submit(false);
+				}
+			}
+
+			try {
+				// Pages of the same range may return concurrently.
+				synchronized (this) {
+					geoQuery.handlePage(this, queryResult);
+
+					itemCount += queryResult.getCount();
+
+					// Only move past the page once it has been handled, so that an expired geo query either has its
+					// items or reports them as uncovered.
+					if (pageIndex >= 0) {
+						onPageHandled(pageIndex, lastEvaluatedKey);
+					}
+				}
+			} catch (Exception e) {
+				geoQuery.onError(e);
+				return;
+			}
+
+			if (lastEvaluatedKey != null && !eager) {
+				geoQuery.onMorePages(this, lastEvaluatedKey);
+			} else if (pendingPages.decrementAndGet() == 0) {
+				config.getRangeMergePolicy().recordQuery(range.getRangeMax() - range.getRangeMin() + 1, itemCount);
+				completed = true;
+				geoQuery.onRangeCompleted(this);
+			}
+		}
+
+		/**
+		 * Move nextGeohash past the pages of the unsplit range that have been handled in order.
+		 */
+		private void onPageHandled(int pageIndex, Map<String, AttributeValue> lastEvaluatedKey) {
+			Long pageEnd = null;
+			if (lastEvaluatedKey != null) {
+				AttributeValue geohash = lastEvaluatedKey.get(config.getGeohashAttributeName());
+				if (geohash != null) {
+					pageEnd = Long.parseLong(geohash.getN());
+				}
+			}
+
+			handledPageEnds.put(pageIndex, pageEnd);
+			while (handledPageEnds.containsKey(handledPages)) {
+				Long nextPageEnd = handledPageEnds.remove(handledPages);
+				if (nextPageEnd != null) {
+					nextGeohash = nextPageEnd;
+				}
+				handledPages++;
+			}
+		}
+
+		/**
+		 * Split the rest of the range into segments of equal geohash width and query them in parallel. The first
+		 * segment resumes from the last evaluated key, the others start from their first geohash.
+		 * 
+		 * @return true if the range has been split, false if it is to be paged through in one piece.
+		 */
+		private boolean trySplit(Map<String, AttributeValue> lastEvaluatedKey) {
+			AttributeValue lastGeohash = lastEvaluatedKey.get(config.getGeohashAttributeName());
+			int segmentCount = config.getRangeSplitCount();
+			if (lastGeohash == null || segmentCount <= 1) {
+				return false;
+			}
+
+			long geohash = Long.parseLong(lastGeohash.getN());
+			long width = range.getRangeMax() - geohash;
+			if (width < segmentCount) {
+				return false;
+			}
+
+			pendingPages.addAndGet(segmentCount);
+
+			long segmentWidth = width / segmentCount;
+			long segmentMin = geohash;
+			for (int i = 0; i < segmentCount; i++) {
+				long segmentMax = i == segmentCount - 1 ? range.getRangeMax() : segmentMin + segmentWidth - 1;
+				new PageRequest(new GeohashRange(segmentMin, segmentMax), i == 0 ? lastEvaluatedKey : null, -1)
+						.submit(false);
+				segmentMin = segmentMax + 1;
+			}
+
+			return true;
 		}
 
-		public void run() {
-			QueryRequest queryRequest = DynamoDBUtil.copyQueryRequest(geoQueryRequest.getQueryRequest());
-			long hashKey = S2Manager.generateHashKey(range.getRangeMin(), config.getHashKeyLength());
+		/**
+		 * Request of a single page. If hedging is enabled and the request is slower than the hedge delay, a duplicate
+		 * request is sent; the first response is used and the other one is ignored. A failed request is retried from
+		 * the same ExclusiveStartKey as long as the retry policy allows it.
+		 */
+		private class PageRequest {
+			private GeohashRange segment;
+			private Map<String, AttributeValue> exclusiveStartKey;
+			private AtomicBoolean completed = new AtomicBoolean();
+			private AtomicInteger failedAttempts = new AtomicInteger();
+			private int pageIndex;
+			private volatile ScheduledFuture<?> hedge;
+
+			public PageRequest(GeohashRange segment, Map<String, AttributeValue> exclusiveStartKey, int pageIndex) {
+				this.segment = segment;
+				this.exclusiveStartKey = exclusiveStartKey;
+				this.pageIndex = pageIndex;
+			}
+
+			public void submit(final boolean isHedge) {
+				queryLimiter.submit(new Runnable() {
+					public void run() {
+						send(isHedge);
+					}
+				}, geoQuery.getPriority().ordinal());
+			}
+
+			private void send(final boolean isHedge) {
+				// The geo query or the page may have completed while the request was waiting for the limiter.
+				if (geoQuery.isDone() || completed.get()) {
+					queryLimiter.release();
+					return;
+				}
+
+				QueryRequest queryRequest = DynamoDBUtil.copyQueryRequest(geoQuery.geoQueryRequest.getQueryRequest());
+				Integer pageLimit = geoQuery.getPageLimit();
+				if (pageLimit != null && queryRequest.getLimit() == null) {
+					queryRequest.setLimit(pageLimit);
+				}
+
+				if (!isHedge) {
+					scheduleHedge();
+				}
+
+				final AtomicBoolean joined = new AtomicBoolean();
+				try {
+					dynamoDBManager.queryGeohashAsync(queryRequest, hashKey, segment, exclusiveStartKey, !isHedge,
+							new QueryHandler() {
+								// Set when the query is sent, so the latency does not include the wait for a thread.
+								private volatile long startInMillis;
+
+								public void onSend() {
+									startInMillis = System.currentTimeMillis();
+								}
+
+								public void onJoin() {
+									joined.set(true);
+								}
+
+								public void onSuccess(QueryRequest queryRequest, QueryResult queryResult) {
+									// A joined query has already been released and its latency is not its own.
+									if (!joined.get()) {
+										long latencyInMillis = System.currentTimeMillis() - startInMillis;
+										queryLimiter.onSuccess(latencyInMillis);
+										if (queryHedger != null) {
+											queryHedger.recordLatency(latencyInMillis);
+										}
+									}
+
+									if (complete()) {
+										onPage(segment, pageIndex, queryResult);
+									}
+								}
+
+								public void onError(Exception e) {
+									onRequestError(e, isHedge, joined.get());
+								}
+							});
+				} catch (Exception e) {
+					onRequestError(e, isHedge, false);
+					return;
+				}
+
+				// A query sharing an identical one in flight sends nothing, so it does not hold a slot of the limiter.
+				if (joined.get()) {
+					queryLimiter.release();
+				}
+			}
+
+			/**
+			 * Retry the request after the delay given by the retry policy, or fail the geo query. A failed hedge is
+			 * ignored, since the original request is still in flight. A request that joined an identical one has
+			 * already released its slot of the limiter.
+			 */
+			private void onRequestError(Exception e, boolean isHedge, boolean joined) {
+				if (!joined) {
+					queryLimiter.onError(e);
+				}
+				if (isHedge || completed.get() || geoQuery.isDone()) {
+					return;
+				}
+
+				QueryRetryPolicy retryPolicy = config.getQueryRetryPolicy();
+				long retryDelayInMillis = -1;
+				if (retryPolicy != null) {
+					retryDelayInMillis = retryPolicy.getRetryDelayInMillis(e, failedAttempts.incrementAndGet());
+				}
+
+				if (retryDelayInMillis < 0) {
+					if (complete()) {
+						geoQuery.onError(e);
+					}
+					return;
+				}
+
+				// The hedge of the failed attempt would duplicate the retry.
+				cancelHedge();
+				config.getScheduledExecutorService().schedule(new Runnable() {
+					public void run() {
+						if (!completed.get() && !geoQuery.isDone()) {
+							submit(false);
+						}
+					}
+				}, retryDelayInMillis, TimeUnit.MILLISECONDS);
+			}
 
-			List<QueryResult> queryResults = dynamoDBManager.queryGeohash(queryRequest, hashKey, range);
+			private void scheduleHedge() {
+				if (queryHedger == null) {
+					return;
+				}
 
-			for (QueryResult queryResult : queryResults) {
-				if (isInterrupted()) {
+				queryHedger.onRequest();
+				long hedgeDelayInMillis = queryHedger.getHedgeDelayInMillis();
+				if (hedgeDelayInMillis < 0) {
 					return;
 				}
 
-				// getQueryResults() returns a synchronized list.
-				geoQueryResult.getQueryResults().add(queryResult);
+				hedge = config.getScheduledExecutorService().schedule(new Runnable() {
+					public void run() {
+						if (!completed.get() && !geoQuery.isDone() && queryHedger.tryAcquireHedge()) {
+							submit(true);
+						}
+					}
+				}, hedgeDelayInMillis, TimeUnit.MILLISECONDS);
+			}
+
+			/**
+			 * @return true for the first response of the page, which is the one to handle.
+			 */
+			private boolean complete() {
+				if (!completed.compareAndSet(false, true)) {
+					return false;
+				}
+
+				cancelHedge();
 
-				List<Map<String, AttributeValue>> filteredQueryResult = filter(queryResult.getItems(), geoQueryRequest);
+				return true;
+			}
 
-				// getItem() returns a synchronized list.
-				geoQueryResult.getItem().addAll(filteredQueryResult);
+			private void cancelHedge() {
+				ScheduledFuture<?> scheduledHedge = hedge;
+				if (scheduledHedge != null) {
+					scheduledHedge.cancel(false);
+				}
 			}
 		}
 	}
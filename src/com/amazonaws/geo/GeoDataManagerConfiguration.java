@@ -15,9 +15,21 @@
 
 package com.amazonaws.geo;
 
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-
+import java.util.concurrent.ScheduledExecutorService;
+
+import com.amazonaws.geo.model.QueryPriority;
+import com.amazonaws.geo.util.AIMDConcurrencyLimit;
+import com.amazonaws.geo.util.ConcurrencyLimit;
+import com.amazonaws.geo.util.DecimalHashKeyStrategy;
+import com.amazonaws.geo.util.ExponentialBackoffRetryPolicy;
+import com.amazonaws.geo.util.FixedThresholdMergePolicy;
+import com.amazonaws.geo.util.HashKeyStrategy;
+import com.amazonaws.geo.util.QueryRetryPolicy;
+import com.amazonaws.geo.util.RangeMergePolicy;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 
 public class GeoDataManagerConfiguration {
@@ -31,12 +43,46 @@ public class GeoDataManagerConfiguration {
 	private static final String DEFAULT_GEOHASH_ATTRIBUTE_NAME = "geohash";
 	private static final String DEFAULT_GEOJSON_ATTRIBUTE_NAME = "geoJson";
 
+	private static final boolean DEFAULT_FILTER_USING_GEOJSON = false;
+
 	private static final String DEFAULT_GEOHASH_INDEX_ATTRIBUTE_NAME = "geohash-index";
 
 	private static final int DEFAULT_HASHKEY_LENGTH = 6;
 
+	private static final int DEFAULT_COVERING_MIN_LEVEL = 0;
+	private static final int DEFAULT_COVERING_MAX_LEVEL = 30;
+	private static final int DEFAULT_COVERING_MAX_CELLS = 16;
+
+	private static final int DEFAULT_QUERY_PLAN_CACHE_SIZE = 1000;
+	private static final double DEFAULT_QUERY_PLAN_CACHE_PRECISION_IN_DEGREE = 0.0001;
+
 	private static final int DEFAULT_THREAD_POOL_SIZE = 10;
 
+	private static final int DEFAULT_SCHEDULED_THREAD_POOL_SIZE = 1;
+
+	private static final int DEFAULT_MAX_CONCURRENCY = 100;
+
+	private static final long DEFAULT_QUERY_LATENCY_THRESHOLD_IN_MILLIS = 1000;
+
+	private static final int DEFAULT_INTERACTIVE_QUERY_WEIGHT = 4;
+
+	private static final int DEFAULT_BATCH_QUERY_WEIGHT = 1;
+
+	private static final double DEFAULT_QUERY_HEDGING_PERCENTILE = 0;
+
+	private static final double DEFAULT_QUERY_HEDGING_BUDGET = 0.05;
+
+	private static final int DEFAULT_QUERY_ITERATOR_BUFFER_SIZE = 4;
+
+	private static final boolean DEFAULT_QUERY_DEDUPLICATION_ENABLED = false;
+
+	private static final int DEFAULT_RANGE_SPLIT_COUNT = 4;
+
+	private static final int DEFAULT_QUERY_MAX_RETRIES = 3;
+	private static final long DEFAULT_QUERY_RETRY_BASE_DELAY_IN_MILLIS = 50;
+	private static final long DEFAULT_QUERY_THROTTLING_RETRY_BASE_DELAY_IN_MILLIS = 500;
+	private static final long DEFAULT_QUERY_RETRY_MAX_DELAY_IN_MILLIS = 10000;
+
 	// Configuration properties
 	private String tableName;
 
@@ -45,23 +91,85 @@ public class GeoDataManagerConfiguration {
 	private String geohashAttributeName;
 	private String geoJsonAttributeName;
 
+	private boolean filterUsingGeoJson;
+
 	private String geohashIndexName;
 
 	private int hashKeyLength;
+	private HashKeyStrategy hashKeyStrategy;
+	private HashKeyStrategy defaultHashKeyStrategy;
+
+	private int coveringMinLevel;
+	private int coveringMaxLevel;
+	private int coveringMaxCells;
+
+	private int queryPlanCacheSize;
+	private double queryPlanCachePrecisionInDegree;
+
+	private RangeMergePolicy rangeMergePolicy;
 
 	private AmazonDynamoDBClient dynamoDBClient;
 
 	private ExecutorService executorService;
 
+	private ScheduledExecutorService scheduledExecutorService;
+
+	private ConcurrencyLimit concurrencyLimit;
+
+	private Map<QueryPriority, Integer> queryPriorityWeights;
+
+	private double queryHedgingPercentile;
+
+	private double queryHedgingBudget;
+
+	private int queryIteratorBufferSize;
+
+	private boolean queryDeduplicationEnabled;
+
+	private int rangeSplitCount;
+
+	private QueryRetryPolicy queryRetryPolicy;
+
 	public GeoDataManagerConfiguration(AmazonDynamoDBClient dynamoDBClient, String tableName) {
 		hashKeyAttributeName = DEFAULT_HASHKEY_ATTRIBUTE_NAME;
 		rangeKeyAttributeName = DEFAULT_RANGEKEY_ATTRIBUTE_NAME;
 		geohashAttributeName = DEFAULT_GEOHASH_ATTRIBUTE_NAME;
 		geoJsonAttributeName = DEFAULT_GEOJSON_ATTRIBUTE_NAME;
 
+		filterUsingGeoJson = DEFAULT_FILTER_USING_GEOJSON;
+
 		geohashIndexName = DEFAULT_GEOHASH_INDEX_ATTRIBUTE_NAME;
 
-		hashKeyLength = DEFAULT_HASHKEY_LENGTH;
+		setHashKeyLength(DEFAULT_HASHKEY_LENGTH);
+
+		coveringMinLevel = DEFAULT_COVERING_MIN_LEVEL;
+		coveringMaxLevel = DEFAULT_COVERING_MAX_LEVEL;
+		coveringMaxCells = DEFAULT_COVERING_MAX_CELLS;
+
+		queryPlanCacheSize = DEFAULT_QUERY_PLAN_CACHE_SIZE;
+		queryPlanCachePrecisionInDegree = DEFAULT_QUERY_PLAN_CACHE_PRECISION_IN_DEGREE;
+
+		rangeMergePolicy = new FixedThresholdMergePolicy(MERGE_THRESHOLD);
+
+		queryIteratorBufferSize = DEFAULT_QUERY_ITERATOR_BUFFER_SIZE;
+
+		queryDeduplicationEnabled = DEFAULT_QUERY_DEDUPLICATION_ENABLED;
+
+		rangeSplitCount = DEFAULT_RANGE_SPLIT_COUNT;
+
+		queryRetryPolicy = new ExponentialBackoffRetryPolicy(DEFAULT_QUERY_MAX_RETRIES,
+				DEFAULT_QUERY_RETRY_BASE_DELAY_IN_MILLIS, DEFAULT_QUERY_THROTTLING_RETRY_BASE_DELAY_IN_MILLIS,
+				DEFAULT_QUERY_RETRY_MAX_DELAY_IN_MILLIS);
+
+		concurrencyLimit = new AIMDConcurrencyLimit(DEFAULT_THREAD_POOL_SIZE, 1, DEFAULT_MAX_CONCURRENCY,
+				DEFAULT_QUERY_LATENCY_THRESHOLD_IN_MILLIS);
+
+		queryPriorityWeights = new EnumMap<QueryPriority, Integer>(QueryPriority.class);
+		queryPriorityWeights.put(QueryPriority.INTERACTIVE, DEFAULT_INTERACTIVE_QUERY_WEIGHT);
+		queryPriorityWeights.put(QueryPriority.BATCH, DEFAULT_BATCH_QUERY_WEIGHT);
+
+		queryHedgingPercentile = DEFAULT_QUERY_HEDGING_PERCENTILE;
+		queryHedgingBudget = DEFAULT_QUERY_HEDGING_BUDGET;
 
 		this.dynamoDBClient = dynamoDBClient;
 		this.tableName = tableName;
@@ -127,6 +235,25 @@ public class GeoDataManagerConfiguration {
 		return this;
 	}
 
+	/**
+	 * @return true if query results are filtered using the coordinates parsed from the GeoJSON attribute. By default
+	 *         they are decoded from the geohash attribute, whose leaf cell is accurate to about a centimeter, so that
+	 *         queries do not need to read the GeoJSON attribute. Items without a geohash attribute always fall back to
+	 *         the GeoJSON attribute.
+	 */
+	public boolean isFilterUsingGeoJson() {
+		return filterUsingGeoJson;
+	}
+
+	public void setFilterUsingGeoJson(boolean filterUsingGeoJson) {
+		this.filterUsingGeoJson = filterUsingGeoJson;
+	}
+
+	public GeoDataManagerConfiguration withFilterUsingGeoJson(boolean filterUsingGeoJson) {
+		setFilterUsingGeoJson(filterUsingGeoJson);
+		return this;
+	}
+
 	public String getGeohashIndexName() {
 		return geohashIndexName;
 	}
@@ -146,6 +273,7 @@ public class GeoDataManagerConfiguration {
 
 	public void setHashKeyLength(int hashKeyLength) {
 		this.hashKeyLength = hashKeyLength;
+		defaultHashKeyStrategy = new DecimalHashKeyStrategy(hashKeyLength);
 	}
 
 	public GeoDataManagerConfiguration withHashKeyLength(int hashKeyLength) {
@@ -153,6 +281,112 @@ public class GeoDataManagerConfiguration {
 		return this;
 	}
 
+	/**
+	 * @return Strategy to derive hash keys from geohashs. Unless set, the first hashKeyLength decimal digits of the
+	 *         geohash are used.
+	 */
+	public HashKeyStrategy getHashKeyStrategy() {
+		if (hashKeyStrategy != null) {
+			return hashKeyStrategy;
+		}
+
+		return defaultHashKeyStrategy;
+	}
+
+	public void setHashKeyStrategy(HashKeyStrategy hashKeyStrategy) {
+		this.hashKeyStrategy = hashKeyStrategy;
+	}
+
+	public GeoDataManagerConfiguration withHashKeyStrategy(HashKeyStrategy hashKeyStrategy) {
+		setHashKeyStrategy(hashKeyStrategy);
+		return this;
+	}
+
+	public int getCoveringMinLevel() {
+		return coveringMinLevel;
+	}
+
+	public void setCoveringMinLevel(int coveringMinLevel) {
+		this.coveringMinLevel = coveringMinLevel;
+	}
+
+	public GeoDataManagerConfiguration withCoveringMinLevel(int coveringMinLevel) {
+		setCoveringMinLevel(coveringMinLevel);
+		return this;
+	}
+
+	public int getCoveringMaxLevel() {
+		return coveringMaxLevel;
+	}
+
+	public void setCoveringMaxLevel(int coveringMaxLevel) {
+		this.coveringMaxLevel = coveringMaxLevel;
+	}
+
+	public GeoDataManagerConfiguration withCoveringMaxLevel(int coveringMaxLevel) {
+		setCoveringMaxLevel(coveringMaxLevel);
+		return this;
+	}
+
+	public int getCoveringMaxCells() {
+		return coveringMaxCells;
+	}
+
+	public void setCoveringMaxCells(int coveringMaxCells) {
+		this.coveringMaxCells = coveringMaxCells;
+	}
+
+	public GeoDataManagerConfiguration withCoveringMaxCells(int coveringMaxCells) {
+		setCoveringMaxCells(coveringMaxCells);
+		return this;
+	}
+
+	/**
+	 * @return Maximum number of query plans cached by GeoDataManager. 0 disables the cache.
+	 */
+	public int getQueryPlanCacheSize() {
+		return queryPlanCacheSize;
+	}
+
+	public void setQueryPlanCacheSize(int queryPlanCacheSize) {
+		this.queryPlanCacheSize = queryPlanCacheSize;
+	}
+
+	public GeoDataManagerConfiguration withQueryPlanCacheSize(int queryPlanCacheSize) {
+		setQueryPlanCacheSize(queryPlanCacheSize);
+		return this;
+	}
+
+	/**
+	 * @return Grid size in degrees that queried areas are enlarged to when the query plan cache is enabled. A larger
+	 *         value increases the hit ratio, but also the area read from Amazon DynamoDB.
+	 */
+	public double getQueryPlanCachePrecisionInDegree() {
+		return queryPlanCachePrecisionInDegree;
+	}
+
+	public void setQueryPlanCachePrecisionInDegree(double queryPlanCachePrecisionInDegree) {
+		this.queryPlanCachePrecisionInDegree = queryPlanCachePrecisionInDegree;
+	}
+
+	public GeoDataManagerConfiguration withQueryPlanCachePrecisionInDegree(double queryPlanCachePrecisionInDegree) {
+		setQueryPlanCachePrecisionInDegree(queryPlanCachePrecisionInDegree);
+		return this;
+	}
+
+	public RangeMergePolicy getRangeMergePolicy() {
+		return rangeMergePolicy;
+	}
+
+	public void setRangeMergePolicy(RangeMergePolicy rangeMergePolicy) {
+		this.rangeMergePolicy = rangeMergePolicy;
+	}
+
+	public GeoDataManagerConfiguration withRangeMergePolicy(RangeMergePolicy rangeMergePolicy) {
+		setRangeMergePolicy(rangeMergePolicy);
+		return this;
+	}
+
 	public AmazonDynamoDBClient getDynamoDBClient() {
 		return dynamoDBClient;
 	}
@@ -176,4 +410,167 @@ public class GeoDataManagerConfiguration {
 			this.executorService = executorService;
 		}
 	}
+
+	/**
+	 * @return Executor running delayed tasks, such as expiring the deadline of a query.
+	 */
+	public ScheduledExecutorService getScheduledExecutorService() {
+		synchronized (this) {
+			if (scheduledExecutorService == null) {
+				scheduledExecutorService = Executors.newScheduledThreadPool(DEFAULT_SCHEDULED_THREAD_POOL_SIZE);
+			}
+		}
+
+		return scheduledExecutorService;
+	}
+
+	public void setScheduledExecutorService(ScheduledExecutorService scheduledExecutorService) {
+		synchronized (this) {
+			this.scheduledExecutorService = scheduledExecutorService;
+		}
+	}
+
+	/**
+	 * @return Maximum number of filtered pages buffered by an iterator returned from queryRectangleIterator() or
+	 *         queryRadiusIterator() before the remaining pages wait for the consumer.
+	 */
+	public int getQueryIteratorBufferSize() {
+		return queryIteratorBufferSize;
+	}
+
+	public void setQueryIteratorBufferSize(int queryIteratorBufferSize) {
+		this.queryIteratorBufferSize = queryIteratorBufferSize;
+	}
+
+	public GeoDataManagerConfiguration withQueryIteratorBufferSize(int queryIteratorBufferSize) {
+		setQueryIteratorBufferSize(queryIteratorBufferSize);
+		return this;
+	}
+
+	/**
+	 * @return true if identical query requests in flight at the same time, e.g. from geo queries of the same area,
+	 *         share a single request to Amazon DynamoDB and its result. The items of the shared pages are then the
+	 *         same objects in the results of these geo queries, so callers must not modify them. A request that joins
+	 *         another one does not count against the concurrency limit while it waits. Disabled by default.
+	 */
+	public boolean isQueryDeduplicationEnabled() {
+		return queryDeduplicationEnabled;
+	}
+
+	public void setQueryDeduplicationEnabled(boolean queryDeduplicationEnabled) {
+		this.queryDeduplicationEnabled = queryDeduplicationEnabled;
+	}
+
+	public GeoDataManagerConfiguration withQueryDeduplicationEnabled(boolean queryDeduplicationEnabled) {
+		setQueryDeduplicationEnabled(queryDeduplicationEnabled);
+		return this;
+	}
+
+	/**
+	 * @return Number of parts a geohash range is split into when its first page is not the last one, e.g. in a dense
+	 *         city centre. The parts are paged through in parallel instead of one page after the other. 1 disables
+	 *         splitting. Paginated queries, iterators and queries with a limit never split ranges.
+	 */
+	public int getRangeSplitCount() {
+		return rangeSplitCount;
+	}
+
+	public void setRangeSplitCount(int rangeSplitCount) {
+		this.rangeSplitCount = rangeSplitCount;
+	}
+
+	public GeoDataManagerConfiguration withRangeSplitCount(int rangeSplitCount) {
+		setRangeSplitCount(rangeSplitCount);
+		return this;
+	}
+
+	/**
+	 * @return Limit of the number of Amazon DynamoDB query requests in flight across all geo queries. The default
+	 *         adapts to latency and throttling, starting from the size of the default thread pool.
+	 */
+	public ConcurrencyLimit getConcurrencyLimit() {
+		return concurrencyLimit;
+	}
+
+	public void setConcurrencyLimit(ConcurrencyLimit concurrencyLimit) {
+		this.concurrencyLimit = concurrencyLimit;
+	}
+
+	public GeoDataManagerConfiguration withConcurrencyLimit(ConcurrencyLimit concurrencyLimit) {
+		setConcurrencyLimit(concurrencyLimit);
+		return this;
+	}
+
+	/**
+	 * @return Policy deciding whether a failed query request of a geo query is retried, resuming its geohash range from
+	 *         the same ExclusiveStartKey, or fails the geo query. By default, throttled and transient failures are
+	 *         retried up to 3 times with exponential backoff and jitter.
+	 */
+	public QueryRetryPolicy getQueryRetryPolicy() {
+		return queryRetryPolicy;
+	}
+
+	public void setQueryRetryPolicy(QueryRetryPolicy queryRetryPolicy) {
+		this.queryRetryPolicy = queryRetryPolicy;
+	}
+
+	public GeoDataManagerConfiguration withQueryRetryPolicy(QueryRetryPolicy queryRetryPolicy) {
+		setQueryRetryPolicy(queryRetryPolicy);
+		return this;
+	}
+
+	/**
+	 * @return Share of the free query request slots given to the waiting requests of the priority class, relative to
+	 *         the weights of the other classes. By default, interactive queries get 4 slots for every slot of batch
+	 *         queries.
+	 */
+	public int getQueryPriorityWeight(QueryPriority priority) {
+		return queryPriorityWeights.get(priority);
+	}
+
+	public void setQueryPriorityWeight(QueryPriority priority, int weight) {
+		if (weight < 1) {
+			throw new IllegalArgumentException("The weight must be at least 1.");
+		}
+
+		queryPriorityWeights.put(priority, weight);
+	}
+
+	public GeoDataManagerConfiguration withQueryPriorityWeight(QueryPriority priority, int weight) {
+		setQueryPriorityWeight(priority, weight);
+		return this;
+	}
+
+	/**
+	 * @return Percentile of the recent query request latencies, between 0 and 1, after which a duplicate of a pending
+	 *         query request is sent and the first response is used, e.g. 0.95. 0, the default, disables hedging.
+	 */
+	public double getQueryHedgingPercentile() {
+		return queryHedgingPercentile;
+	}
+
+	public void setQueryHedgingPercentile(double queryHedgingPercentile) {
+		this.queryHedgingPercentile = queryHedgingPercentile;
+	}
+
+	public GeoDataManagerConfiguration withQueryHedgingPercentile(double queryHedgingPercentile) {
+		setQueryHedgingPercentile(queryHedgingPercentile);
+		return this;
+	}
+
+	/**
+	 * @return Maximum fraction of the query requests that are hedged. The default is 0.05.
+	 */
+	public double getQueryHedgingBudget() {
+		return queryHedgingBudget;
+	}
+
+	public void setQueryHedgingBudget(double queryHedgingBudget) {
+		this.queryHedgingBudget = queryHedgingBudget;
+	}
+
+	public GeoDataManagerConfiguration withQueryHedgingBudget(double queryHedgingBudget) {
+		setQueryHedgingBudget(queryHedgingBudget);
+		return this;
+	}
 }
@@ -19,7 +19,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import com.amazonaws.AmazonWebServiceRequest;
 import com.amazonaws.geo.GeoDataManagerConfiguration;
 import com.amazonaws.geo.model.BatchWritePointResult;
 import com.amazonaws.geo.model.DeletePointRequest;
@@ -33,6 +37,8 @@ import com.amazonaws.geo.model.UpdatePointRequest;
 import com.amazonaws.geo.model.UpdatePointResult;
 import com.amazonaws.geo.s2.internal.S2Manager;
 import com.amazonaws.geo.util.GeoJsonMapper;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
@@ -51,16 +57,32 @@ import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
 import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
 import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
 import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.SettableFuture;
 
 public class DynamoDBManager {
 	private GeoDataManagerConfiguration config;
 
+	// Queries sent and not returned yet, keyed by the prepared query request.
+	private ConcurrentMap<QueryRequest, InFlightQuery> inFlightQueries = new ConcurrentHashMap<QueryRequest,
+			InFlightQuery>();
+
 	public DynamoDBManager(GeoDataManagerConfiguration config) {
 		this.config = config;
 	}
 
 	/**
-	 * Query Amazon DynamoDB
+	 * Query a single page from Amazon DynamoDB without blocking. The page is queried with the asynchronous client if
+	 * the configured client is an AmazonDynamoDBAsync, otherwise with the blocking client on the executor service. If
+	 * query deduplication is enabled and an identical query is already in flight, the handler joins it and is notified
+	 * with the result of that query instead of sending another one; the result is then shared and must not be
+	 * modified.
+	 * 
+	 * @param queryRequest
+	 *            Query request to send. It must not be shared with other pages.
 	 * 
 	 * @param hashKey
 	 *            Hash key for the query request.
@@ -68,43 +90,118 @@ public class DynamoDBManager {
 	 * @param range
 	 *            The range of geohashs to query.
 	 * 
-	 * @return The query result.
+	 * @param exclusiveStartKey
+	 *            LastEvaluatedKey of the previous page, or null for the first page.
+	 * 
+	 * @param shareInFlight
+	 *            false to always send the query, e.g. for a hedged request.
+	 * 
+	 * @param queryHandler
+	 *            Handler notified when the query is sent or joined, and when the page is returned or the query fails.
 	 */
-	public List<QueryResult> queryGeohash(QueryRequest queryRequest, long hashKey, GeohashRange range) {
-		List<QueryResult> queryResults = new ArrayList<QueryResult>();
-		Map<String, AttributeValue> lastEvaluatedKey = null;
+	public void queryGeohashAsync(QueryRequest queryRequest, long hashKey, GeohashRange range,
+			Map<String, AttributeValue> exclusiveStartKey, boolean shareInFlight, QueryHandler queryHandler) {
+		QueryRequest request = prepareQueryRequest(queryRequest, hashKey, range, exclusiveStartKey);
+
+		if (!shareInFlight || !config.isQueryDeduplicationEnabled()) {
+			sendQuery(request, queryHandler);
+			return;
+		}
+
+		InFlightQuery inFlightQuery = new InFlightQuery(request, queryHandler);
+		while (true) {
+			InFlightQuery existingQuery = inFlightQueries.putIfAbsent(request, inFlightQuery);
+			if (existingQuery == null) {
+				sendQuery(request, inFlightQuery);
+				return;
+			}
 
-		do {
-			Map<String, Condition> keyConditions = new HashMap<String, Condition>();
+			if (existingQuery.join(queryHandler)) {
+				return;
+			}
 
-			Condition hashKeyCondition = new Condition().withComparisonOperator(ComparisonOperator.EQ)
-					.withAttributeValueList(new AttributeValue().withN(String.valueOf(hashKey)));
-			keyConditions.put(config.getHashKeyAttributeName(), hashKeyCondition);
+			// The existing query has just completed.
+			inFlightQueries.remove(request, existingQuery);
+		}
+	}
 
-			AttributeValue minRange = new AttributeValue().withN(Long.toString(range.getRangeMin()));
-			AttributeValue maxRange = new AttributeValue().withN(Long.toString(range.getRangeMax()));
+	private void sendQuery(final QueryRequest request, final QueryHandler queryHandler) {
+		if (config.getDynamoDBClient() instanceof AmazonDynamoDBAsync) {
+			// The asynchronous client queues the query on its own executor, which cannot be observed.
+			queryHandler.onSend();
+			((AmazonDynamoDBAsync) config.getDynamoDBClient()).queryAsync(request, queryHandler);
+			return;
+		}
 
-			Condition geohashCondition = new Condition().withComparisonOperator(ComparisonOperator.BETWEEN)
-					.withAttributeValueList(minRange, maxRange);
-			keyConditions.put(config.getGeohashAttributeName(), geohashCondition);
+		config.getExecutorService().execute(new Runnable() {
+			public void run() {
+				queryHandler.onSend();
+
+				QueryResult queryResult;
+				try {
+					queryResult = config.getDynamoDBClient().query(request);
+				} catch (Exception e) {
+					queryHandler.onError(e);
+					return;
+				}
+
+				queryHandler.onSuccess(request, queryResult);
+			}
+		});
+	}
 
-			queryRequest.withTableName(config.getTableName()).withKeyConditions(keyConditions)
-					.withIndexName(config.getGeohashIndexName()).withConsistentRead(true)
-					.withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL).withExclusiveStartKey(lastEvaluatedKey);
+	private QueryRequest prepareQueryRequest(QueryRequest queryRequest, long hashKey, GeohashRange range,
+			Map<String, AttributeValue> exclusiveStartKey) {
+		Map<String, Condition> keyConditions = new HashMap<String, Condition>();
 
-			QueryResult queryResult = config.getDynamoDBClient().query(queryRequest);
-			queryResults.add(queryResult);
+		Condition hashKeyCondition = new Condition().withComparisonOperator(ComparisonOperator.EQ)
+				.withAttributeValueList(new AttributeValue().withN(String.valueOf(hashKey)));
+		keyConditions.put(config.getHashKeyAttributeName(), hashKeyCondition);
 
-			lastEvaluatedKey = queryResult.getLastEvaluatedKey();
+		AttributeValue minRange = new AttributeValue().withN(Long.toString(range.getRangeMin()));
+		AttributeValue maxRange = new AttributeValue().withN(Long.toString(range.getRangeMax()));
 
-		} while (lastEvaluatedKey != null);
+		Condition geohashCondition = new Condition().withComparisonOperator(ComparisonOperator.BETWEEN)
+				.withAttributeValueList(minRange, maxRange);
+		keyConditions.put(config.getGeohashAttributeName(), geohashCondition);
 
-		return queryResults;
+		return queryRequest.withTableName(config.getTableName()).withKeyConditions(keyConditions)
+				.withIndexName(config.getGeohashIndexName()).withConsistentRead(true)
+				.withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL).withExclusiveStartKey(exclusiveStartKey);
 	}
 
 	public GetPointResult getPoint(GetPointRequest getPointRequest) {
+		GetItemRequest getItemRequest = prepareGetItemRequest(getPointRequest);
+
+		GetItemResult getItemResult = config.getDynamoDBClient().getItem(getItemRequest);
+		GetPointResult getPointResult = new GetPointResult(getItemResult);
+
+		return getPointResult;
+	}
+
+	public ListenableFuture<GetPointResult> getPointAsync(final GetPointRequest getPointRequest) {
+		if (!(config.getDynamoDBClient() instanceof AmazonDynamoDBAsync)) {
+			return submit(new Callable<GetPointResult>() {
+				public GetPointResult call() {
+					return getPoint(getPointRequest);
+				}
+			});
+		}
+
+		FutureHandler<GetItemRequest, GetItemResult> handler = new FutureHandler<GetItemRequest, GetItemResult>();
+		((AmazonDynamoDBAsync) config.getDynamoDBClient()).getItemAsync(prepareGetItemRequest(getPointRequest),
+				handler);
+
+		return Futures.transform(handler.getFuture(), new Function<GetItemResult, GetPointResult>() {
+			public GetPointResult apply(GetItemResult getItemResult) {
+				return new GetPointResult(getItemResult);
+			}
+		});
+	}
+
+	private GetItemRequest prepareGetItemRequest(GetPointRequest getPointRequest) {
 		long geohash = S2Manager.generateGeohash(getPointRequest.getGeoPoint());
-		long hashKey = S2Manager.generateHashKey(geohash, config.getHashKeyLength());
+		long hashKey = config.getHashKeyStrategy().generateHashKey(geohash);
 
 		GetItemRequest getItemRequest = getPointRequest.getGetItemRequest();
 		getItemRequest.setTableName(config.getTableName());
@@ -113,15 +210,41 @@ public class DynamoDBManager {
 		getItemRequest.getKey().put(config.getHashKeyAttributeName(), hashKeyValue);
 		getItemRequest.getKey().put(config.getRangeKeyAttributeName(), getPointRequest.getRangeKeyValue());
 
-		GetItemResult getItemResult = config.getDynamoDBClient().getItem(getItemRequest);
-		GetPointResult getPointResult = new GetPointResult(getItemResult);
-
-		return getPointResult;
+		return getItemRequest;
 	}
 
 	public PutPointResult putPoint(PutPointRequest putPointRequest) {
+		PutItemRequest putItemRequest = preparePutItemRequest(putPointRequest);
+
+		PutItemResult putItemResult = config.getDynamoDBClient().putItem(putItemRequest);
+		PutPointResult putPointResult = new PutPointResult(putItemResult);
+
+		return putPointResult;
+	}
+
+	public ListenableFuture<PutPointResult> putPointAsync(final PutPointRequest putPointRequest) {
+		if (!(config.getDynamoDBClient() instanceof AmazonDynamoDBAsync)) {
+			return submit(new Callable<PutPointResult>() {
+				public PutPointResult call() {
+					return putPoint(putPointRequest);
+				}
+			});
+		}
+
+		FutureHandler<PutItemRequest, PutItemResult> handler = new FutureHandler<PutItemRequest, PutItemResult>();
+		((AmazonDynamoDBAsync) config.getDynamoDBClient()).putItemAsync(preparePutItemRequest(putPointRequest),
+				handler);
+
+		return Futures.transform(handler.getFuture(), new Function<PutItemResult, PutPointResult>() {
+			public PutPointResult apply(PutItemResult putItemResult) {
+				return new PutPointResult(putItemResult);
+			}
+		});
+	}
+
+	private PutItemRequest preparePutItemRequest(PutPointRequest putPointRequest) {
 		long geohash = S2Manager.generateGeohash(putPointRequest.getGeoPoint());
-		long hashKey = S2Manager.generateHashKey(geohash, config.getHashKeyLength());
+		long hashKey = config.getHashKeyStrategy().generateHashKey(geohash);
 		String geoJson = GeoJsonMapper.stringFromGeoObject(putPointRequest.getGeoPoint());
 
 		PutItemRequest putItemRequest = putPointRequest.getPutItemRequest();
@@ -135,10 +258,7 @@ public class DynamoDBManager {
 		AttributeValue geoJsonValue = new AttributeValue().withS(geoJson);
 		putItemRequest.getItem().put(config.getGeoJsonAttributeName(), geoJsonValue);
 
-		PutItemResult putItemResult = config.getDynamoDBClient().putItem(putItemRequest);
-		PutPointResult putPointResult = new PutPointResult(putItemResult);
-
-		return putPointResult;
+		return putItemRequest;
 	}
 	
 	public BatchWritePointResult batchWritePoints(List<PutPointRequest> putPointRequests) {
@@ -146,7 +266,7 @@ public class DynamoDBManager {
 		List<WriteRequest> writeRequests = new ArrayList<WriteRequest>();
 		for (PutPointRequest putPointRequest : putPointRequests) {
 			long geohash = S2Manager.generateGeohash(putPointRequest.getGeoPoint());
-			long hashKey = S2Manager.generateHashKey(geohash, config.getHashKeyLength());
+			long hashKey = config.getHashKeyStrategy().generateHashKey(geohash);
 			String geoJson = GeoJsonMapper.stringFromGeoObject(putPointRequest.getGeoPoint());
 
 			PutRequest putRequest = putPointRequest.getPutRequest();
@@ -170,8 +290,38 @@ public class DynamoDBManager {
 	}
 
 	public UpdatePointResult updatePoint(UpdatePointRequest updatePointRequest) {
+		UpdateItemRequest updateItemRequest = prepareUpdateItemRequest(updatePointRequest);
+
+		UpdateItemResult updateItemResult = config.getDynamoDBClient().updateItem(updateItemRequest);
+		UpdatePointResult updatePointResult = new UpdatePointResult(updateItemResult);
+
+		return updatePointResult;
+	}
+
+	public ListenableFuture<UpdatePointResult> updatePointAsync(final UpdatePointRequest updatePointRequest) {
+		if (!(config.getDynamoDBClient() instanceof AmazonDynamoDBAsync)) {
+			return submit(new Callable<UpdatePointResult>() {
+				public UpdatePointResult call() {
+					return updatePoint(updatePointRequest);
+				}
+			});
+		}
+
+		FutureHandler<UpdateItemRequest, UpdateItemResult> handler = new FutureHandler<UpdateItemRequest,
+				UpdateItemResult>();
+		((AmazonDynamoDBAsync) config.getDynamoDBClient()).updateItemAsync(
+				prepareUpdateItemRequest(updatePointRequest), handler);
+
+		return Futures.transform(handler.getFuture(), new Function<UpdateItemResult, UpdatePointResult>() {
+			public UpdatePointResult apply(UpdateItemResult updateItemResult) {
+				return new UpdatePointResult(updateItemResult);
+			}
+		});
+	}
+
+	private UpdateItemRequest prepareUpdateItemRequest(UpdatePointRequest updatePointRequest) {
 		long geohash = S2Manager.generateGeohash(updatePointRequest.getGeoPoint());
-		long hashKey = S2Manager.generateHashKey(geohash, config.getHashKeyLength());
+		long hashKey = config.getHashKeyStrategy().generateHashKey(geohash);
 
 		UpdateItemRequest updateItemRequest = updatePointRequest.getUpdateItemRequest();
 		updateItemRequest.setTableName(config.getTableName());
@@ -184,15 +334,42 @@ public class DynamoDBManager {
 		updateItemRequest.getAttributeUpdates().remove(config.getGeohashAttributeName());
 		updateItemRequest.getAttributeUpdates().remove(config.getGeoJsonAttributeName());
 
-		UpdateItemResult updateItemResult = config.getDynamoDBClient().updateItem(updateItemRequest);
-		UpdatePointResult updatePointResult = new UpdatePointResult(updateItemResult);
-
-		return updatePointResult;
+		return updateItemRequest;
 	}
 
 	public DeletePointResult deletePoint(DeletePointRequest deletePointRequest) {
+		DeleteItemRequest deleteItemRequest = prepareDeleteItemRequest(deletePointRequest);
+
+		DeleteItemResult deleteItemResult = config.getDynamoDBClient().deleteItem(deleteItemRequest);
+		DeletePointResult deletePointResult = new DeletePointResult(deleteItemResult);
+
+		return deletePointResult;
+	}
+
+	public ListenableFuture<DeletePointResult> deletePointAsync(final DeletePointRequest deletePointRequest) {
+		if (!(config.getDynamoDBClient() instanceof AmazonDynamoDBAsync)) {
+			return submit(new Callable<DeletePointResult>() {
+				public DeletePointResult call() {
+					return deletePoint(deletePointRequest);
+				}
+			});
+		}
+
+		FutureHandler<DeleteItemRequest, DeleteItemResult> handler = new FutureHandler<DeleteItemRequest,
+				DeleteItemResult>();
+		((AmazonDynamoDBAsync) config.getDynamoDBClient()).deleteItemAsync(
+				prepareDeleteItemRequest(deletePointRequest), handler);
+
+		return Futures.transform(handler.getFuture(), new Function<DeleteItemResult, DeletePointResult>() {
+			public DeletePointResult apply(DeleteItemResult deleteItemResult) {
+				return new DeletePointResult(deleteItemResult);
+			}
+		});
+	}
+
+	private DeleteItemRequest prepareDeleteItemRequest(DeletePointRequest deletePointRequest) {
 		long geohash = S2Manager.generateGeohash(deletePointRequest.getGeoPoint());
-		long hashKey = S2Manager.generateHashKey(geohash, config.getHashKeyLength());
+		long hashKey = config.getHashKeyStrategy().generateHashKey(geohash);
 
 		DeleteItemRequest deleteItemRequest = deletePointRequest.getDeleteItemRequest();
 
@@ -202,9 +379,96 @@ public class DynamoDBManager {
 		deleteItemRequest.getKey().put(config.getHashKeyAttributeName(), hashKeyValue);
 		deleteItemRequest.getKey().put(config.getRangeKeyAttributeName(), deletePointRequest.getRangeKeyValue());
 
-		DeleteItemResult deleteItemResult = config.getDynamoDBClient().deleteItem(deleteItemRequest);
-		DeletePointResult deletePointResult = new DeletePointResult(deleteItemResult);
+		return deleteItemRequest;
+	}
 
-		return deletePointResult;
+	/**
+	 * Run a blocking call on the executor service.
+	 */
+	private <V> ListenableFuture<V> submit(Callable<V> callable) {
+		ListenableFutureTask<V> task = new ListenableFutureTask<V>(callable);
+		config.getExecutorService().execute(task);
+
+		return task;
+	}
+
+	/**
+	 * Query sent to Amazon DynamoDB, whose result is handed to every handler that joined it before it returned.
+	 */
+	private class InFlightQuery implements QueryHandler {
+		private QueryRequest request;
+		private QueryHandler sender;
+		private List<QueryHandler> queryHandlers;
+
+		public InFlightQuery(QueryRequest request, QueryHandler queryHandler) {
+			this.request = request;
+			sender = queryHandler;
+			queryHandlers = new ArrayList<QueryHandler>();
+			queryHandlers.add(queryHandler);
+		}
+
+		/**
+		 * @return false if the query has already returned, so the handler has to send its own query.
+		 */
+		public synchronized boolean join(QueryHandler queryHandler) {
+			if (queryHandlers == null) {
+				return false;
+			}
+
+			// Before the handler can be notified of the result.
+			queryHandler.onJoin();
+			queryHandlers.add(queryHandler);
+			return true;
+		}
+
+		public void onSend() {
+			sender.onSend();
+		}
+
+		public void onJoin() {
+			throw new UnsupportedOperationException();
+		}
+
+		public void onSuccess(QueryRequest queryRequest, QueryResult queryResult) {
+			for (QueryHandler queryHandler : complete()) {
+				queryHandler.onSuccess(queryRequest, queryResult);
+			}
+		}
+
+		public void onError(Exception e) {
+			for (QueryHandler queryHandler : complete()) {
+				queryHandler.onError(e);
+			}
+		}
+
+		private List<QueryHandler> complete() {
+			inFlightQueries.remove(request, this);
+
+			synchronized (this) {
+				List<QueryHandler> joinedHandlers = queryHandlers;
+				queryHandlers = null;
+				return joinedHandlers;
+			}
+		}
+	}
+
+	/**
+	 * Completes a future with the result of an asynchronous Amazon DynamoDB call.
+	 */
+	private static class FutureHandler<REQUEST extends AmazonWebServiceRequest, RESULT> implements
+			AsyncHandler<REQUEST, RESULT> {
+		private SettableFuture<RESULT> future = SettableFuture.create();
+
+		public void onSuccess(REQUEST request, RESULT result) {
+			future.set(result);
+		}
+
+		public void onError(Exception e) {
+			future.setException(e);
+		}
+
+		public ListenableFuture<RESULT> getFuture() {
+			return future;
+		}
 	}
 }
@@ -15,6 +15,8 @@
 
 package com.amazonaws.geo.dynamodb.internal;
 
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
 import com.amazonaws.services.dynamodbv2.model.QueryRequest;
 
 public class DynamoDBUtil {
@@ -29,4 +31,22 @@ public class DynamoDBUtil {
 
 		return copiedQueryRequest;
 	}
+
+	/**
+	 * @return true if Amazon DynamoDB rejected the request because the provisioned throughput was exceeded or the
+	 *         request rate was too high.
+	 */
+	public static boolean isThrottlingException(Exception e) {
+		if (e instanceof ProvisionedThroughputExceededException) {
+			return true;
+		}
+
+		if (e instanceof AmazonServiceException) {
+			String errorCode = ((AmazonServiceException) e).getErrorCode();
+			return "ProvisionedThroughputExceededException".equals(errorCode)
+					|| "ThrottlingException".equals(errorCode);
+		}
+
+		return false;
+	}
 }
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.dynamodb.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+
+import com.amazonaws.geo.s2.internal.QueryPlan;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.util.BinaryUtils;
+
+/**
+ * Position of a paginated geo query: the geohash ranges that remain to be queried and, for each of them, the
+ * ExclusiveStartKey to resume from. It is encoded as an opaque, URL safe token.
+ */
+public class QueryCursor {
+	private static final int VERSION = 1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static ObjectMapper mapper = new ObjectMapper();
+
+	private final QueryPlan queryPlan;
+	private final List<Map<String, AttributeValue>> exclusiveStartKeys;
+
+	/**
+	 * @param queryPlan
+	 *            Remaining ranges, in the order they are queried.
+	 * 
+	 * @param exclusiveStartKeys
+	 *            Key to resume each range from, or null to query it from the beginning.
+	 */
+	public QueryCursor(QueryPlan queryPlan, List<Map<String, AttributeValue>> exclusiveStartKeys) {
+		this.queryPlan = queryPlan;
+		this.exclusiveStartKeys = exclusiveStartKeys;
+	}
+
+	public QueryPlan getQueryPlan() {
+		return queryPlan;
+	}
+
+	public Map<String, AttributeValue> getExclusiveStartKey(int index) {
+		return exclusiveStartKeys.get(index);
+	}
+
+	public String encode() {
+		ObjectNode root = mapper.createObjectNode();
+		root.put("v", VERSION);
+
+		ArrayNode ranges = root.putArray("r");
+		for (int i = 0; i < queryPlan.size(); i++) {
+			ArrayNode range = ranges.addArray();
+			range.add(queryPlan.getHashKey(i));
+			range.add(queryPlan.getRangeMin(i));
+			range.add(queryPlan.getRangeMax(i));
+
+			Map<String, AttributeValue> exclusiveStartKey = exclusiveStartKeys.get(i);
+			if (exclusiveStartKey != null) {
+				ObjectNode key = range.addObject();
+				for (Map.Entry<String, AttributeValue> attribute : exclusiveStartKey.entrySet()) {
+					encodeAttributeValue(key.putObject(attribute.getKey()), attribute.getValue());
+				}
+			}
+		}
+
+		byte[] json;
+		try {
+			json = mapper.writeValueAsBytes(root);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		return BinaryUtils.toBase64(json).replace('+', '-').replace('/', '_');
+	}
+
+	/**
+	 * @param cursor
+	 *            Token returned by encode().
+	 * 
+	 * @return The decoded cursor.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             If the token is not a valid cursor.
+	 */
+	public static QueryCursor decode(String cursor) {
+		try {
+			byte[] json = BinaryUtils.fromBase64(cursor.replace('-', '+').replace('_', '/'));
+			return decode(mapper.readTree(new String(json, UTF8)));
+		} catch (IllegalArgumentException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Invalid cursor.", e);
+		}
+	}
+
+	private static QueryCursor decode(JsonNode root) {
+		if (root == null || !root.has("v") || root.get("v").getIntValue() != VERSION || !root.has("r")) {
+			throw new IllegalArgumentException("Invalid cursor.");
+		}
+
+		QueryPlan.Builder builder = new QueryPlan.Builder();
+		List<Map<String, AttributeValue>> exclusiveStartKeys = new ArrayList<Map<String, AttributeValue>>();
+		for (JsonNode range : root.get("r")) {
+			builder.add(range.get(0).getLongValue(), range.get(1).getLongValue(), range.get(2).getLongValue());
+
+			Map<String, AttributeValue> exclusiveStartKey = null;
+			if (range.size() > 3) {
+				exclusiveStartKey = new HashMap<String, AttributeValue>();
+				Iterator<Map.Entry<String, JsonNode>> attributes = range.get(3).getFields();
+				while (attributes.hasNext()) {
+					Map.Entry<String, JsonNode> attribute = attributes.next();
+					exclusiveStartKey.put(attribute.getKey(), decodeAttributeValue(attribute.getValue()));
+				}
+			}
+			exclusiveStartKeys.add(exclusiveStartKey);
+		}
+
+		return new QueryCursor(builder.build(), exclusiveStartKeys);
+	}
+
+	/**
+	 * Key attributes are scalars, so only S, N and B values are supported.
+	 */
+	private static void encodeAttributeValue(ObjectNode node, AttributeValue attributeValue) {
+		if (attributeValue.getS() != null) {
+			node.put("S", attributeValue.getS());
+		} else if (attributeValue.getN() != null) {
+			node.put("N", attributeValue.getN());
+		} else if (attributeValue.getB() != null) {
+			ByteBuffer b = attributeValue.getB().duplicate();
+			byte[] bytes = new byte[b.remaining()];
+			b.get(bytes);
+			node.put("B", BinaryUtils.toBase64(bytes));
+		} else {
+			throw new IllegalArgumentException("Key attributes must be strings, numbers or binaries.");
+		}
+	}
+
+	private static AttributeValue decodeAttributeValue(JsonNode node) {
+		if (node.has("S")) {
+			return new AttributeValue().withS(node.get("S").getTextValue());
+		} else if (node.has("N")) {
+			return new AttributeValue().withN(node.get("N").getTextValue());
+		} else if (node.has("B")) {
+			return new AttributeValue().withB(ByteBuffer.wrap(BinaryUtils.fromBase64(node.get("B").getTextValue())));
+		}
+
+		throw new IllegalArgumentException("Invalid cursor.");
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.dynamodb.internal;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+
+/**
+ * Handler of a geohash query sent by DynamoDBManager.queryGeohashAsync(), which is also told when the query actually
+ * starts, i.e. after it has waited for a thread of the executor service, or that it shares an identical query instead.
+ * Exactly one of onSend() and onJoin() is called, before onSuccess() or onError().
+ */
+public interface QueryHandler extends AsyncHandler<QueryRequest, QueryResult> {
+
+	/**
+	 * Called when the query is sent to Amazon DynamoDB.
+	 */
+	public void onSend();
+
+	/**
+	 * Called when the handler joins an identical query in flight instead of sending its own. It is called while the
+	 * query is locked, so it must return quickly and must not send queries.
+	 */
+	public void onJoin();
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.dynamodb.internal;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Decides when to hedge a query request, i.e. to send a duplicate of a request that is slower than usual and use
+ * whichever response arrives first.
+ * </p>
+ * <p>
+ * The hedge delay is a percentile of the latencies of the recent requests. Hedges are paid from a token bucket: every
+ * request adds budget tokens, and every hedge takes one, so that at most a fraction budget of the requests are
+ * hedged. This class is thread safe.
+ * </p>
+ */
+public class QueryHedger {
+	private static final int SAMPLE_SIZE = 1000;
+	private static final int MIN_SAMPLE_COUNT = 100;
+	private static final int UPDATE_INTERVAL = 100;
+	private static final double MAX_TOKENS = 10;
+
+	private final double percentile;
+	private final double budget;
+
+	private final long[] samples = new long[SAMPLE_SIZE];
+	private int sampleCount;
+	private int nextSample;
+	private int samplesSinceUpdate;
+	private long hedgeDelayInMillis = -1;
+
+	private double tokens;
+	private long hedgeCount;
+
+	/**
+	 * @param percentile
+	 *            Percentile of the recent latencies after which a request is hedged, between 0 and 1.
+	 * 
+	 * @param budget
+	 *            Maximum fraction of the requests that are hedged.
+	 */
+	public QueryHedger(double percentile, double budget) {
+		this.percentile = percentile;
+		this.budget = budget;
+	}
+
+	/**
+	 * Record the latency of a completed request.
+	 */
+	public synchronized void recordLatency(long latencyInMillis) {
+		samples[nextSample] = latencyInMillis;
+		nextSample = (nextSample + 1) % SAMPLE_SIZE;
+		sampleCount = Math.min(sampleCount + 1, SAMPLE_SIZE);
+
+		// Sorting the samples for every request would cost more than the hedging saves.
+		if (++samplesSinceUpdate >= UPDATE_INTERVAL && sampleCount >= MIN_SAMPLE_COUNT) {
+			samplesSinceUpdate = 0;
+
+			long[] sorted = Arrays.copyOf(samples, sampleCount);
+			Arrays.sort(sorted);
+			hedgeDelayInMillis = sorted[Math.min(sampleCount - 1, (int) (percentile * sampleCount))];
+		}
+	}
+
+	/**
+	 * Called for every request that is not a hedge.
+	 */
+	public synchronized void onRequest() {
+		tokens = Math.min(MAX_TOKENS, tokens + budget);
+	}
+
+	/**
+	 * @return Delay after which a request should be hedged, or -1 if too few latencies have been recorded yet.
+	 */
+	public synchronized long getHedgeDelayInMillis() {
+		return hedgeDelayInMillis;
+	}
+
+	/**
+	 * @return true if the budget allows another hedge, which is then taken from the budget.
+	 */
+	public synchronized boolean tryAcquireHedge() {
+		if (tokens < 1) {
+			return false;
+		}
+
+		tokens -= 1;
+		hedgeCount++;
+		return true;
+	}
+
+	public synchronized long getHedgeCount() {
+		return hedgeCount;
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.dynamodb.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+import com.amazonaws.geo.util.ConcurrencyLimit;
+
+/**
+ * <p>
+ * Runs query tasks while the number of tasks in flight is below the concurrency limit, and queues the others. Each
+ * task that has been run must be released exactly once, by onSuccess(), onError() or release().
+ * </p>
+ * <p>
+ * Queued tasks wait in one FIFO lane per priority class. Free slots are shared between the lanes with stride
+ * scheduling: each lane has a pass that advances by 1 / weight whenever one of its tasks is run, and the non-empty lane
+ * with the smallest pass runs next. A lane that was empty does not keep the credit it would have accumulated.
+ * </p>
+ * <p>
+ * Tasks are run outside of the lock, on the thread that submits or releases. They must not block. A task submitted or
+ * released while the thread is running a task is picked up by the same loop once that task returns, instead of
+ * recursively, so a long run of tasks that release themselves right away does not grow the stack. This class is thread
+ * safe.
+ * </p>
+ */
+public class QueryLimiter {
+	private final ConcurrencyLimit concurrencyLimit;
+
+	private final Object lock = new Object();
+	private final List<Queue<Runnable>> lanes;
+	private final double[] strides;
+	private final double[] passes;
+	private double virtualTime;
+
+	private int inFlightCount;
+	private int queuedCount;
+
+	// Set while the current thread runs queued tasks.
+	private final ThreadLocal<Boolean> running = new ThreadLocal<Boolean>();
+
+	/**
+	 * @param concurrencyLimit
+	 *            Limit of the number of tasks in flight.
+	 * 
+	 * @param weights
+	 *            Weight of each lane. Must be at least 1.
+	 */
+	public QueryLimiter(ConcurrencyLimit concurrencyLimit, int[] weights) {
+		this.concurrencyLimit = concurrencyLimit;
+
+		lanes = new ArrayList<Queue<Runnable>>(weights.length);
+		strides = new double[weights.length];
+		passes = new double[weights.length];
+		for (int i = 0; i < weights.length; i++) {
+			lanes.add(new LinkedList<Runnable>());
+			strides[i] = 1.0 / weights[i];
+		}
+	}
+
+	/**
+	 * Run the task now if the limit allows it, otherwise once enough tasks in flight have been released.
+	 * 
+	 * @param task
+	 *            Task sending a query request.
+	 * 
+	 * @param lane
+	 *            Index of the lane the task waits in.
+	 */
+	public void submit(Runnable task, int lane) {
+		synchronized (lock) {
+			Queue<Runnable> queue = lanes.get(lane);
+			if (queue.isEmpty()) {
+				passes[lane] = Math.max(passes[lane], virtualTime);
+			}
+
+			queue.add(task);
+			queuedCount++;
+		}
+
+		runQueuedTasks();
+	}
+
+	/**
+	 * Release a task whose query request has completed successfully.
+	 */
+	public void onSuccess(long latencyInMillis) {
+		concurrencyLimit.onSuccess(latencyInMillis);
+		release();
+	}
+
+	/**
+	 * Release a task whose query request has failed.
+	 */
+	public void onError(Exception e) {
+		if (DynamoDBUtil.isThrottlingException(e)) {
+			concurrencyLimit.onThrottled();
+		}
+		release();
+	}
+
+	/**
+	 * Release a task without recording the outcome of a query request, e.g. because it did not send one.
+	 */
+	public void release() {
+		synchronized (lock) {
+			inFlightCount--;
+		}
+
+		runQueuedTasks();
+	}
+
+	/**
+	 * Run queued tasks while the limit allows it, unless the current thread is already running them.
+	 */
+	private void runQueuedTasks() {
+		if (running.get() != null) {
+			return;
+		}
+
+		running.set(Boolean.TRUE);
+		try {
+			// The limit may have grown, so more than one queued task may be run.
+			while (true) {
+				Runnable task;
+				synchronized (lock) {
+					if (queuedCount == 0 || inFlightCount >= concurrencyLimit.getLimit()) {
+						return;
+					}
+
+					task = pollNextTask();
+					inFlightCount++;
+				}
+
+				task.run();
+			}
+		} finally {
+			running.remove();
+		}
+	}
+
+	private Runnable pollNextTask() {
+		int next = -1;
+		for (int i = 0; i < lanes.size(); i++) {
+			if (!lanes.get(i).isEmpty() && (next < 0 || passes[i] < passes[next])) {
+				next = i;
+			}
+		}
+
+		virtualTime = passes[next];
+		passes[next] += strides[next];
+		queuedCount--;
+
+		return lanes.get(next).poll();
+	}
+
+	public int getInFlightCount() {
+		synchronized (lock) {
+			return inFlightCount;
+		}
+	}
+
+	public int getQueuedCount() {
+		synchronized (lock) {
+			return queuedCount;
+		}
+	}
+}
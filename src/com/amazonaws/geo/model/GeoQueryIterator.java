@@ -0,0 +1,38 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.model;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * <p>
+ * Iterator over the items of a geo query, returned while the geo query is still running. hasNext() blocks until the
+ * next item has been retrieved or the query has completed, and throws AmazonClientException if the query failed.
+ * </p>
+ * <p>
+ * An iterator must be consumed by a single thread. remove() is not supported.
+ * </p>
+ */
+public interface GeoQueryIterator extends Iterator<Map<String, AttributeValue>> {
+
+	/**
+	 * Stop querying Amazon DynamoDB and discard the buffered items. Pages that are already being queried are ignored.
+	 */
+	public void close();
+}
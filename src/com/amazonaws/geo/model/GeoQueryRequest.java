@@ -19,12 +19,103 @@ import com.amazonaws.services.dynamodbv2.model.QueryRequest;
 
 public class GeoQueryRequest extends GeoDataRequest {
 	private QueryRequest queryRequest;
+	private long timeoutInMillis;
+	private QueryPriority priority;
+	private ResultMode resultMode;
+	private int limit;
+	private int pageSize;
+	private String cursor;
 
 	public GeoQueryRequest() {
 		queryRequest = new QueryRequest();
+		priority = QueryPriority.INTERACTIVE;
+		resultMode = ResultMode.FULL;
 	}
 
 	public QueryRequest getQueryRequest() {
 		return queryRequest;
 	}
+
+	/**
+	 * @return Deadline of the query, in milliseconds after it has been dispatched. When the deadline expires, the
+	 *         pending queries are abandoned and the items retrieved so far are returned as a partial result. 0, the
+	 *         default, means no deadline.
+	 */
+	public long getTimeoutInMillis() {
+		return timeoutInMillis;
+	}
+
+	public void setTimeoutInMillis(long timeoutInMillis) {
+		this.timeoutInMillis = timeoutInMillis;
+	}
+
+	/**
+	 * @return Priority class of the query requests sent to Amazon DynamoDB for this geo query.
+	 */
+	public QueryPriority getPriority() {
+		return priority;
+	}
+
+	public void setPriority(QueryPriority priority) {
+		if (priority == null) {
+			throw new IllegalArgumentException("Priority must not be null.");
+		}
+
+		this.priority = priority;
+	}
+
+	/**
+	 * @return What the result of the geo query retains. The iterators always return the filtered items as maps.
+	 */
+	public ResultMode getResultMode() {
+		return resultMode;
+	}
+
+	public void setResultMode(ResultMode resultMode) {
+		this.resultMode = resultMode;
+	}
+
+	/**
+	 * @return Maximum number of filtered items returned by the geo query, across all geohash ranges. Once enough items
+	 *         have been retrieved, the pending queries are abandoned. With a limit, the ranges nearest to the center of
+	 *         the queried area are queried first and only a few ranges are queried at a time, so the items are any
+	 *         items in the area, not the nearest ones; use queryNearest() for those. Unlike the limit of
+	 *         getQueryRequest(), which is the size of each Amazon DynamoDB page, it applies to the whole geo query. 0,
+	 *         the default, means no limit. It does not apply to nearest queries, which have a count, nor to queries
+	 *         with a page size.
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	public void setLimit(int limit) {
+		this.limit = limit;
+	}
+
+	/**
+	 * @return Maximum number of filtered items in the result of a rectangle or radius query. If it is positive, the
+	 *         geohash ranges are read one page after the other until the page size is reached, and the result
+	 *         contains a cursor to get the next items. A result may exceed the page size if the key attributes are not
+	 *         retrieved, since a page of Amazon DynamoDB can only be cut at an item whose key is known. 0, the default,
+	 *         returns all items at once.
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * @return Cursor returned by GeoQueryResult.getNextCursor() for the previous page of a paginated query, or null
+	 *         for the first page. The other parameters of the request must not change between pages.
+	 */
+	public String getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
 }
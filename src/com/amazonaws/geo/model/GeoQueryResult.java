@@ -25,11 +25,31 @@ import com.amazonaws.services.dynamodbv2.model.QueryResult;
 
 public class GeoQueryResult extends GeoDataResult {
 	private List<Map<String, AttributeValue>> item;
+	private List<GeoRow> rows;
 	private List<QueryResult> queryResults;
+	private List<Double> distanceInMeter;
+	private List<GeohashRange> uncoveredRanges;
+	private String nextCursor;
 
 	public GeoQueryResult() {
 		item = Collections.synchronizedList(new ArrayList<Map<String, AttributeValue>>());
 		queryResults = Collections.synchronizedList(new ArrayList<QueryResult>());
+		rows = Collections.synchronizedList(new ArrayList<GeoRow>());
+		uncoveredRanges = new ArrayList<GeohashRange>();
+	}
+
+	/**
+	 * @param item
+	 *            Filtered items. The list is used as is; it is not made thread safe.
+	 * 
+	 * @param queryResults
+	 *            Results of the Amazon DynamoDB query requests. The list is used as is; it is not made thread safe.
+	 */
+	public GeoQueryResult(List<Map<String, AttributeValue>> item, List<QueryResult> queryResults) {
+		this.item = item;
+		this.queryResults = queryResults;
+		rows = new ArrayList<GeoRow>();
+		uncoveredRanges = new ArrayList<GeohashRange>();
 	}
 
 	public GeoQueryResult(GeoQueryResult geoQueryResult) {
@@ -37,6 +57,10 @@ public class GeoQueryResult extends GeoDataResult {
 
 		item = geoQueryResult.getItem();
 		queryResults = geoQueryResult.getQueryResults();
+		rows = geoQueryResult.getRows();
+		distanceInMeter = geoQueryResult.getDistanceInMeter();
+		uncoveredRanges = geoQueryResult.getUncoveredRanges();
+		nextCursor = geoQueryResult.getNextCursor();
 	}
 
 	public List<Map<String, AttributeValue>> getItem() {
@@ -46,4 +70,58 @@ public class GeoQueryResult extends GeoDataResult {
 	public List<QueryResult> getQueryResults() {
 		return queryResults;
 	}
+
+	/**
+	 * @return Filtered items as compact rows, if the query used ResultMode.COMPACT. Otherwise empty.
+	 */
+	public List<GeoRow> getRows() {
+		return rows;
+	}
+
+	public void setRows(List<GeoRow> rows) {
+		this.rows = rows;
+	}
+
+	/**
+	 * @return Distance of each item from the center point, in the same order as getItem(), if the items are sorted by
+	 *         distance. Otherwise null.
+	 */
+	public List<Double> getDistanceInMeter() {
+		return distanceInMeter;
+	}
+
+	public void setDistanceInMeter(List<Double> distanceInMeter) {
+		this.distanceInMeter = distanceInMeter;
+	}
+
+	/**
+	 * @return true if the deadline of the query expired before all geohash ranges were queried. The items in the
+	 *         uncovered ranges are missing from the result.
+	 */
+	public boolean isPartial() {
+		return !uncoveredRanges.isEmpty();
+	}
+
+	/**
+	 * @return Geohash ranges that were not queried, or only partly queried, before the deadline expired.
+	 */
+	public List<GeohashRange> getUncoveredRanges() {
+		return uncoveredRanges;
+	}
+
+	public void setUncoveredRanges(List<GeohashRange> uncoveredRanges) {
+		this.uncoveredRanges = uncoveredRanges;
+	}
+
+	/**
+	 * @return Cursor to pass to GeoQueryRequest.setCursor() to get the next page of a paginated query, or null if
+	 *         there are no more items.
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public void setNextCursor(String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * <p>
+ * Compact representation of an item returned by a geo query. The coordinates and the geohash are kept as primitive
+ * fields, and the GeoJSON, geohash and hash key attributes are dropped. The other attributes are kept in two arrays,
+ * and only converted to a map when getAttributes() is called.
+ * </p>
+ * <p>
+ * A row is a fraction of the size of the HashMap holding the same item, most of which is the GeoJSON string.
+ * </p>
+ */
+public class GeoRow {
+	private final double latitude;
+	private final double longitude;
+	private final long geohash;
+
+	private final String[] attributeNames;
+	private final AttributeValue[] attributeValues;
+
+	public GeoRow(double latitude, double longitude, long geohash, String[] attributeNames,
+			AttributeValue[] attributeValues) {
+		this.latitude = latitude;
+		this.longitude = longitude;
+		this.geohash = geohash;
+		this.attributeNames = attributeNames;
+		this.attributeValues = attributeValues;
+	}
+
+	public double getLatitude() {
+		return latitude;
+	}
+
+	public double getLongitude() {
+		return longitude;
+	}
+
+	public long getGeohash() {
+		return geohash;
+	}
+
+	/**
+	 * @return Value of the attribute, or null if the item does not have it.
+	 */
+	public AttributeValue getAttribute(String attributeName) {
+		for (int i = 0; i < attributeNames.length; i++) {
+			if (attributeNames[i].equals(attributeName)) {
+				return attributeValues[i];
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return New map of the attributes of the item, except the GeoJSON, geohash and hash key attributes.
+	 */
+	public Map<String, AttributeValue> getAttributes() {
+		Map<String, AttributeValue> attributes = new HashMap<String, AttributeValue>(attributeNames.length * 2);
+		for (int i = 0; i < attributeNames.length; i++) {
+			attributes.put(attributeNames[i], attributeValues[i]);
+		}
+
+		return attributes;
+	}
+}
@@ -19,7 +19,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.amazonaws.geo.GeoDataManagerConfiguration;
+import com.amazonaws.geo.s2.internal.QueryPlan;
 import com.amazonaws.geo.s2.internal.S2Manager;
+import com.amazonaws.geo.util.DecimalHashKeyStrategy;
+import com.amazonaws.geo.util.HashKeyStrategy;
 
 public class GeohashRange {
 
@@ -89,24 +92,24 @@ public class GeohashRange {
 	 * max: -123456789
 	 */
 	public List<GeohashRange> trySplit(int hashKeyLength) {
-		List<GeohashRange> result = new ArrayList<GeohashRange>();
+		return trySplit(new DecimalHashKeyStrategy(hashKeyLength));
+	}
 
-		long minHashKey = S2Manager.generateHashKey(rangeMin, hashKeyLength);
-		long maxHashKey = S2Manager.generateHashKey(rangeMax, hashKeyLength);
+	/*
+	 * Try to split the range to multiple ranges based on the hash keys of the given strategy.
+	 */
+	public List<GeohashRange> trySplit(HashKeyStrategy hashKeyStrategy) {
+		List<GeohashRange> result = new ArrayList<GeohashRange>();
 
-		long denominator = (long) Math.pow(10, String.valueOf(rangeMin).length() - String.valueOf(minHashKey).length());
+		QueryPlan.Builder builder = new QueryPlan.Builder();
+		S2Manager.splitByHashKey(rangeMin, rangeMax, hashKeyStrategy, builder);
 
-		if (minHashKey == maxHashKey) {
+		if (builder.size() == 1) {
 			result.add(this);
 		} else {
-			for (long l = minHashKey; l <= maxHashKey; l++) {
-				if (l > 0) {
-					result.add(new GeohashRange(l == minHashKey ? rangeMin : l * denominator,
-							l == maxHashKey ? rangeMax : (l + 1) * denominator - 1));
-				} else {
-					result.add(new GeohashRange(l == minHashKey ? rangeMin : (l - 1) * denominator + 1,
-							l == maxHashKey ? rangeMax : l * denominator));
-				}
+			QueryPlan queryPlan = builder.build();
+			for (int i = 0; i < queryPlan.size(); i++) {
+				result.add(queryPlan.getGeohashRange(i));
 			}
 		}
 
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.model;
+
+public class QueryNearestRequest extends GeoQueryRequest {
+	private GeoPoint centerPoint;
+	private int count;
+	private double maxRadiusInMeter;
+
+	public QueryNearestRequest(GeoPoint centerPoint, int count, double maxRadiusInMeter) {
+		this.centerPoint = centerPoint;
+		this.count = count;
+		this.maxRadiusInMeter = maxRadiusInMeter;
+	}
+
+	public GeoPoint getCenterPoint() {
+		return centerPoint;
+	}
+
+	/**
+	 * @return Maximum number of points to return.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return Points farther than this radius from the center point are not returned.
+	 */
+	public double getMaxRadiusInMeter() {
+		return maxRadiusInMeter;
+	}
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.model;
+
+/**
+ * Result of a nearest query. The items are ordered by distance from the center point, nearest first, and
+ * getDistanceInMeter() returns the distance of each item.
+ */
+public class QueryNearestResult extends GeoQueryResult {
+
+	public QueryNearestResult(GeoQueryResult geoQueryResult) {
+		super(geoQueryResult);
+	}
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.model;
+
+/**
+ * Priority class of a geo query. When the concurrency limit is reached, the waiting query requests of each class
+ * share the free slots in proportion to the weight of their class (see
+ * GeoDataManagerConfiguration.getQueryPriorityWeight()).
+ */
+public enum QueryPriority {
+	/**
+	 * Queries a user is waiting for. This is the default.
+	 */
+	INTERACTIVE,
+
+	/**
+	 * Background queries, e.g. analytics sweeps, that should not slow down interactive queries.
+	 */
+	BATCH
+}
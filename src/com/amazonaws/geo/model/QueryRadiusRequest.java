@@ -18,6 +18,7 @@ package com.amazonaws.geo.model;
 public class QueryRadiusRequest extends GeoQueryRequest {
 	private GeoPoint centerPoint;
 	private double radiusInMeter;
+	private boolean sortedByDistance;
 
 	public QueryRadiusRequest(GeoPoint centerPoint, double radiusInMeter) {
 		this.centerPoint = centerPoint;
@@ -31,4 +32,21 @@ public class QueryRadiusRequest extends GeoQueryRequest {
 	public double getRadiusInMeter() {
 		return radiusInMeter;
 	}
+
+	/**
+	 * @return true if the items of the result are ordered by distance from the center point, nearest first, with
+	 *         their distance in QueryRadiusResult.getDistanceInMeter(). The default is false.
+	 */
+	public boolean isSortedByDistance() {
+		return sortedByDistance;
+	}
+
+	public void setSortedByDistance(boolean sortedByDistance) {
+		this.sortedByDistance = sortedByDistance;
+	}
+
+	public QueryRadiusRequest withSortedByDistance(boolean sortedByDistance) {
+		setSortedByDistance(sortedByDistance);
+		return this;
+	}
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.model;
+
+/**
+ * What a GeoQueryResult retains of the query.
+ */
+public enum ResultMode {
+	/**
+	 * The filtered items, and every raw QueryResult returned by Amazon DynamoDB. This is the default.
+	 */
+	FULL,
+
+	/**
+	 * Only the filtered items. GeoQueryResult.getQueryResults() is empty, so the items that were filtered out can be
+	 * garbage collected as soon as their page has been filtered.
+	 */
+	LEAN,
+
+	/**
+	 * Only the filtered items, as GeoRow instances in GeoQueryResult.getRows(). GeoQueryResult.getItem() is empty.
+	 */
+	COMPACT
+}
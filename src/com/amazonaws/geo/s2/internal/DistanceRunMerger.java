@@ -0,0 +1,71 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.s2.internal;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * K-way merger of runs of items that are each sorted by distance.
+ */
+public class DistanceRunMerger {
+
+	/**
+	 * Merge the runs into a single list ordered by distance. Each run is read once; the merge costs O(n log k) for n
+	 * items in k runs instead of re-sorting all items.
+	 * 
+	 * @param runs
+	 *            Runs of items, each ordered by distance.
+	 * 
+	 * @param runDistances
+	 *            Distance of each item of each run, in the same order as runs.
+	 * 
+	 * @param items
+	 *            List the merged items are added to.
+	 * 
+	 * @param distances
+	 *            List the distances of the merged items are added to.
+	 */
+	public static <T> void merge(final List<List<T>> runs, final List<double[]> runDistances, List<T> items,
+			List<Double> distances) {
+		final int[] positions = new int[runs.size()];
+
+		// Runs ordered by the distance of their next item.
+		PriorityQueue<Integer> heads = new PriorityQueue<Integer>(Math.max(1, runs.size()), new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(runDistances.get(a)[positions[a]], runDistances.get(b)[positions[b]]);
+			}
+		});
+
+		for (int i = 0; i < runs.size(); i++) {
+			if (!runs.get(i).isEmpty()) {
+				heads.add(i);
+			}
+		}
+
+		while (!heads.isEmpty()) {
+			int run = heads.poll();
+			items.add(runs.get(run).get(positions[run]));
+			distances.add(runDistances.get(run)[positions[run]]);
+
+			positions[run]++;
+			if (positions[run] < runs.get(run).size()) {
+				heads.add(run);
+			}
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.s2.internal;
+
+import java.util.Arrays;
+
+import com.amazonaws.geo.util.HashKeyStrategy;
+import com.amazonaws.geo.util.RangeMergePolicy;
+
+/**
+ * Sort-and-sweep merger of geohash ranges working on primitive arrays.
+ */
+public class GeohashRangeMerger {
+
+	/**
+	 * <p>
+	 * Merge overlapping ranges and ranges whose gap is at most mergeThreshold. Ranges with a larger gap are merged when
+	 * the last hash key of the previous range is the first hash key of the next range and the merge policy accepts the
+	 * gap; merging ranges across hash keys would not save a query request. The result does not depend on the order of
+	 * the input ranges.
+	 * </p>
+	 * <p>
+	 * For the union of intervals, the minimums and the maximums can be sorted independently: the i-th smallest minimum
+	 * and the i-th smallest maximum do not need to belong to the same input range for the sweep to be correct. Both
+	 * input arrays are sorted in place.
+	 * </p>
+	 * 
+	 * @param rangeMins
+	 *            Minimum geohash of each range.
+	 * 
+	 * @param rangeMaxs
+	 *            Maximum geohash of each range.
+	 * 
+	 * @param mergeThreshold
+	 *            Maximum gap between two ranges to always merge them.
+	 * 
+	 * @param mergePolicy
+	 *            Policy deciding whether to merge ranges with a larger gap.
+	 * 
+	 * @param hashKeyStrategy
+	 *            Strategy to generate the hash keys.
+	 * 
+	 * @return Merged ranges, packed as { min0, max0, min1, max1, ... } in ascending order.
+	 */
+	public static long[] merge(long[] rangeMins, long[] rangeMaxs, long mergeThreshold, RangeMergePolicy mergePolicy,
+			HashKeyStrategy hashKeyStrategy) {
+		int n = rangeMins.length;
+		if (n == 0) {
+			return new long[0];
+		}
+
+		Arrays.sort(rangeMins);
+		Arrays.sort(rangeMaxs);
+
+		long[] merged = new long[2 * n];
+		int size = 0;
+
+		long currentMin = rangeMins[0];
+		for (int i = 0; i < n - 1; i++) {
+			if (rangeMins[i + 1] <= rangeMaxs[i]) {
+				// Overlapping ranges.
+				continue;
+			}
+
+			// The gap is negative only if the subtraction overflows, i.e. the gap is huge.
+			long gap = rangeMins[i + 1] - rangeMaxs[i];
+			if (gap > 0 && gap <= mergeThreshold) {
+				continue;
+			}
+
+			if (gap > 0 && hashKeyStrategy.getMaxGeohash(rangeMaxs[i]) >= rangeMins[i + 1]
+					&& mergePolicy.shouldMerge(gap)) {
+				continue;
+			}
+
+			merged[size++] = currentMin;
+			merged[size++] = rangeMaxs[i];
+			currentMin = rangeMins[i + 1];
+		}
+		merged[size++] = currentMin;
+		merged[size++] = rangeMaxs[n - 1];
+
+		return Arrays.copyOf(merged, size);
+	}
+}
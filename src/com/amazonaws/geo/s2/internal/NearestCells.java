@@ -0,0 +1,100 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.s2.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.google.common.geometry.S2Cell;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2LatLng;
+
+/**
+ * <p>
+ * Cells of a covering ordered by their distance from a center point, handed out in rings of increasing radius.
+ * </p>
+ * <p>
+ * The distance of a cell is the distance from the center to the bounding rectangle of the cell, which is never more
+ * than the distance to any point in the cell. This class is not thread safe.
+ * </p>
+ */
+public class NearestCells {
+	private final S2CellId[] cellIds;
+	private final double[] distances;
+	private int next;
+
+	public NearestCells(S2CellUnion cellUnion, S2LatLng centerLatLng) {
+		int size = cellUnion.size();
+
+		final double[] cellDistances = new double[size];
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			S2Cell cell = new S2Cell(cellUnion.cellId(i));
+			cellDistances[i] = cell.getRectBound().getDistance(centerLatLng).radians() * S2LatLng.EARTH_RADIUS_METERS;
+			order[i] = i;
+		}
+
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(cellDistances[a], cellDistances[b]);
+			}
+		});
+
+		cellIds = new S2CellId[size];
+		distances = new double[size];
+		for (int i = 0; i < size; i++) {
+			cellIds[i] = cellUnion.cellId(order[i]);
+			distances[i] = cellDistances[order[i]];
+		}
+	}
+
+	/**
+	 * @return true if some cells have not been handed out yet.
+	 */
+	public boolean hasNext() {
+		return next < cellIds.length;
+	}
+
+	/**
+	 * @return Distance in meters from the center to the nearest cell that has not been handed out yet. No point in the
+	 *         remaining cells is nearer than this distance.
+	 */
+	public double getNextDistance() {
+		return distances[next];
+	}
+
+	/**
+	 * Hand out the nearest remaining cell and every other remaining cell within the given distance.
+	 * 
+	 * @param radiusInMeter
+	 *            Outer radius of the ring.
+	 * 
+	 * @return Cells of the ring, ordered by distance.
+	 */
+	public S2CellUnion nextRing(double radiusInMeter) {
+		ArrayList<S2CellId> ring = new ArrayList<S2CellId>();
+		do {
+			ring.add(cellIds[next++]);
+		} while (next < cellIds.length && distances[next] <= radiusInMeter);
+
+		S2CellUnion cellUnion = new S2CellUnion();
+		cellUnion.initRawCellIds(ring);
+
+		return cellUnion;
+	}
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.s2.internal;
+
+import com.google.common.geometry.S2LatLng;
+import com.google.common.geometry.S2LatLngRect;
+import com.google.common.geometry.S2Projections;
+
+/**
+ * Batch filter of points given as arrays of latitudes and longitudes in radians. It does not allocate and only computes
+ * the exact great circle distance of the points near the boundary of the queried circle.
+ */
+public class PointFilter {
+
+	/**
+	 * Relative margin of the bounds on the haversine of the distance, which covers the rounding errors of the bounds.
+	 */
+	private static final double BOUND_MARGIN = 1e-9;
+
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	/**
+	 * Child (i, j) bits, as (i &lt;&lt; 1) | j, of each position along the Hilbert curve for each orientation.
+	 */
+	private static final int[][] POS_TO_IJ = { { 0, 1, 3, 2 }, { 0, 2, 3, 1 }, { 3, 2, 0, 1 }, { 3, 1, 0, 2 } };
+
+	/**
+	 * Orientation change of each position along the Hilbert curve: swap (1) and invert (2) masks.
+	 */
+	private static final int[] POS_TO_ORIENTATION = { 1, 0, 0, 3 };
+
+	private static final int MAX_SIZE = 1 << 30;
+
+	/**
+	 * Decode the center of a leaf cell into the coordinate arrays. The result is the same as S2CellId.toLatLng(), but
+	 * the Hilbert curve position is decoded in place instead of through an S2CellId, an S2Point and an S2LatLng.
+	 * 
+	 * @param geohash
+	 *            Geohash of a point, i.e. the id of its leaf cell.
+	 * 
+	 * @param latitudes
+	 *            Array the latitude is written to in radians.
+	 * 
+	 * @param longitudes
+	 *            Array the longitude is written to in radians.
+	 * 
+	 * @param index
+	 *            Index of the point in the arrays.
+	 * 
+	 * @return False if the geohash is not a leaf cell, in which case nothing is written.
+	 */
+	public static boolean decodeLeafCell(long geohash, double[] latitudes, double[] longitudes, int index) {
+		int face = (int) (geohash >>> 61);
+		if (face > 5 || (geohash & 1) == 0) {
+			return false;
+		}
+
+		int orientation = face & 1;
+		int i = 0;
+		int j = 0;
+		for (int shift = 59; shift > 0; shift -= 2) {
+			int pos = (int) (geohash >>> shift) & 3;
+			int ij = POS_TO_IJ[orientation][pos];
+			i = (i << 1) | (ij >> 1);
+			j = (j << 1) | (ij & 1);
+			orientation ^= POS_TO_ORIENTATION[pos];
+		}
+
+		// Center of the leaf cell, in the same steps as S2CellId.toPointRaw() and S2Projections.faceUvToXyz().
+		double u = S2Projections.stToUV((double) ((i << 1) + 1 - MAX_SIZE) / MAX_SIZE);
+		double v = S2Projections.stToUV((double) ((j << 1) + 1 - MAX_SIZE) / MAX_SIZE);
+		double x;
+		double y;
+		double z;
+		switch (face) {
+		case 0:
+			x = 1;
+			y = u;
+			z = v;
+			break;
+		case 1:
+			x = -u;
+			y = 1;
+			z = v;
+			break;
+		case 2:
+			x = -u;
+			y = -v;
+			z = 1;
+			break;
+		case 3:
+			x = -1;
+			y = -v;
+			z = -u;
+			break;
+		case 4:
+			x = v;
+			y = -1;
+			z = -u;
+			break;
+		default:
+			x = v;
+			y = u;
+			z = -1;
+			break;
+		}
+
+		latitudes[index] = Math.atan2(z, Math.sqrt(x * x + y * y));
+		longitudes[index] = Math.atan2(y, x);
+
+		return true;
+	}
+
+	/**
+	 * Select the points within a rectangle.
+	 * 
+	 * @param latLngRect
+	 *            Queried rectangle.
+	 * 
+	 * @param latitudes
+	 *            Latitudes of the points in radians.
+	 * 
+	 * @param longitudes
+	 *            Longitudes of the points in radians.
+	 * 
+	 * @param selected
+	 *            Array the indexes of the points within the rectangle are written to, in ascending order.
+	 * 
+	 * @return Number of selected points.
+	 */
+	public static int filterByRectangle(S2LatLngRect latLngRect, double[] latitudes, double[] longitudes,
+			int[] selected) {
+		int size = 0;
+		for (int i = 0; i < latitudes.length; i++) {
+			if (latLngRect.lat().contains(latitudes[i]) && latLngRect.lng().contains(longitudes[i])) {
+				selected[size++] = i;
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * Select the points within a circle. The result is the same as comparing S2LatLng.getEarthDistance to the radius
+	 * for every point, but the points far from the boundary are accepted or rejected with bounds of the haversine of
+	 * their distance, which only take a few multiplications.
+	 * 
+	 * <p>
+	 * The bounds follow from t - t^3 / 6 &lt;= sin(t) &lt;= t for 0 &lt;= t &lt;= pi / 2, applied to the half
+	 * differences of latitude and longitude, and from the range of the cosine of the latitude of the points that can
+	 * be in the circle.
+	 * </p>
+	 * 
+	 * @param centerLatLng
+	 *            Center of the circle.
+	 * 
+	 * @param radiusInMeter
+	 *            Radius of the circle.
+	 * 
+	 * @param latitudes
+	 *            Latitudes of the points in radians.
+	 * 
+	 * @param longitudes
+	 *            Longitudes of the points in radians.
+	 * 
+	 * @param selected
+	 *            Array the indexes of the points within the circle are written to, in ascending order.
+	 * 
+	 * @param distances
+	 *            Array the exact distances of the selected points are written to, in the same order. If null, the
+	 *            distances are only computed near the boundary.
+	 * 
+	 * @return Number of selected points.
+	 */
+	public static int filterByRadius(S2LatLng centerLatLng, double radiusInMeter, double[] latitudes,
+			double[] longitudes, int[] selected, double[] distances) {
+		double centerLat = centerLatLng.latRadians();
+		double centerLng = centerLatLng.lngRadians();
+		double centerCos = Math.cos(centerLat);
+
+		double radius = radiusInMeter / S2LatLng.EARTH_RADIUS_METERS;
+		if (radius < 0) {
+			return 0;
+		}
+
+		// A point is within the circle iff the haversine of its distance is at most maxHaversine.
+		double maxHaversine = 1;
+		if (radius < Math.PI) {
+			double halfRadiusSin = Math.sin(0.5 * radius);
+			maxHaversine = halfRadiusSin * halfRadiusSin;
+		}
+		double acceptHaversine = maxHaversine * (1 - BOUND_MARGIN);
+		double rejectHaversine = maxHaversine * (1 + BOUND_MARGIN);
+
+		// The distance is at least the difference of latitude, so the points within the circle are in this band.
+		double maxLatDiff = radius * (1 + BOUND_MARGIN);
+		double minLat = Math.max(-0.5 * Math.PI, centerLat - maxLatDiff);
+		double maxLat = Math.min(0.5 * Math.PI, centerLat + maxLatDiff);
+		double minCos = Math.min(Math.cos(minLat), Math.cos(maxLat));
+		double maxCos = minLat <= 0 && maxLat >= 0 ? 1 : Math.max(Math.cos(minLat), Math.cos(maxLat));
+		double minCosProduct = Math.max(0, centerCos * minCos * (1 - BOUND_MARGIN));
+		double maxCosProduct = centerCos * maxCos * (1 + BOUND_MARGIN);
+
+		int size = 0;
+		for (int i = 0; i < latitudes.length; i++) {
+			double latDiff = latitudes[i] - centerLat;
+			if (latDiff > maxLatDiff || latDiff < -maxLatDiff) {
+				continue;
+			}
+
+			double lngDiff = Math.abs(longitudes[i] - centerLng);
+			if (lngDiff > Math.PI) {
+				lngDiff = 2 * Math.PI - lngDiff;
+			}
+
+			double halfLatDiff = 0.5 * Math.abs(latDiff);
+			double halfLngDiff = 0.5 * lngDiff;
+			double latSinLower = halfLatDiff - halfLatDiff * halfLatDiff * halfLatDiff / 6;
+			double lngSinLower = halfLngDiff - halfLngDiff * halfLngDiff * halfLngDiff / 6;
+
+			double minHaversine = latSinLower * latSinLower + lngSinLower * lngSinLower * minCosProduct;
+			if (minHaversine > rejectHaversine) {
+				continue;
+			}
+
+			if (distances == null) {
+				double maxHaversineBound = halfLatDiff * halfLatDiff + halfLngDiff * halfLngDiff * maxCosProduct;
+				if (maxHaversineBound < acceptHaversine) {
+					selected[size++] = i;
+					continue;
+				}
+			}
+
+			double distanceInMeter = getEarthDistance(centerLat, centerLng, centerCos, latitudes[i], longitudes[i]);
+			if (distanceInMeter <= radiusInMeter) {
+				if (distances != null) {
+					distances[size] = distanceInMeter;
+				}
+				selected[size++] = i;
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * Sort the selected points by distance, nearest first. Points at the same distance stay in index order.
+	 * 
+	 * @param selected
+	 *            Indexes of the points.
+	 * 
+	 * @param distances
+	 *            Distances of the points, in the same order as selected.
+	 * 
+	 * @param size
+	 *            Number of selected points.
+	 */
+	public static void sortByDistance(int[] selected, double[] distances, int size) {
+		sort(selected, distances, 0, size - 1);
+	}
+
+	/**
+	 * Same computation as S2LatLng.getEarthDistance, without creating S2LatLng and S1Angle objects.
+	 */
+	private static double getEarthDistance(double centerLat, double centerLng, double centerCos, double lat,
+			double lng) {
+		double latSin = Math.sin(0.5 * (lat - centerLat));
+		double lngSin = Math.sin(0.5 * (lng - centerLng));
+		double x = latSin * latSin + lngSin * lngSin * centerCos * Math.cos(lat);
+
+		return 2 * Math.atan2(Math.sqrt(x), Math.sqrt(Math.max(0.0, 1.0 - x))) * S2LatLng.EARTH_RADIUS_METERS;
+	}
+
+	private static void sort(int[] selected, double[] distances, int low, int high) {
+		while (high - low >= INSERTION_SORT_THRESHOLD) {
+			int middle = (low + high) >>> 1;
+			int pivotIndex = selected[middle];
+			double pivotDistance = distances[middle];
+
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (isBefore(distances[i], selected[i], pivotDistance, pivotIndex)) {
+					i++;
+				}
+				while (isBefore(pivotDistance, pivotIndex, distances[j], selected[j])) {
+					j--;
+				}
+				if (i <= j) {
+					swap(selected, distances, i++, j--);
+				}
+			}
+
+			// Recurse into the smaller part to bound the stack depth.
+			if (j - low < high - i) {
+				sort(selected, distances, low, j);
+				low = i;
+			} else {
+				sort(selected, distances, i, high);
+				high = j;
+			}
+		}
+
+		for (int i = low + 1; i <= high; i++) {
+			for (int j = i; j > low && isBefore(distances[j], selected[j], distances[j - 1], selected[j - 1]); j--) {
+				swap(selected, distances, j, j - 1);
+			}
+		}
+	}
+
+	private static boolean isBefore(double distance, int index, double otherDistance, int otherIndex) {
+		return distance < otherDistance || (distance == otherDistance && index < otherIndex);
+	}
+
+	private static void swap(int[] selected, double[] distances, int i, int j) {
+		int index = selected[i];
+		selected[i] = selected[j];
+		selected[j] = index;
+
+		double distance = distances[i];
+		distances[i] = distances[j];
+		distances[j] = distance;
+	}
+}
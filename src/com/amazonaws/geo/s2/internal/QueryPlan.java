@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.s2.internal;
+
+import java.util.Arrays;
+
+import com.amazonaws.geo.model.GeohashRange;
+
+/**
+ * Geohash ranges to query for a geo query, already merged and split by hash key. Each entry is a tuple of hash key,
+ * minimum geohash and maximum geohash. The plan is immutable, so it can be shared between threads and cached.
+ */
+public class QueryPlan {
+	private final long[] hashKeys;
+	private final long[] rangeMins;
+	private final long[] rangeMaxs;
+
+	public QueryPlan(long[] hashKeys, long[] rangeMins, long[] rangeMaxs) {
+		this.hashKeys = hashKeys;
+		this.rangeMins = rangeMins;
+		this.rangeMaxs = rangeMaxs;
+	}
+
+	public int size() {
+		return hashKeys.length;
+	}
+
+	public long getHashKey(int index) {
+		return hashKeys[index];
+	}
+
+	public long getRangeMin(int index) {
+		return rangeMins[index];
+	}
+
+	public long getRangeMax(int index) {
+		return rangeMaxs[index];
+	}
+
+	/**
+	 * GeohashRange is mutable, so a new instance is returned on every call.
+	 * 
+	 * @param index
+	 *            Index of the entry in this plan.
+	 * 
+	 * @return The range of geohashs of the entry.
+	 */
+	public GeohashRange getGeohashRange(int index) {
+		return new GeohashRange(rangeMins[index], rangeMaxs[index]);
+	}
+
+	/**
+	 * Growable buffer of (hash key, minimum geohash, maximum geohash) tuples.
+	 */
+	public static class Builder {
+		private long[] hashKeys = new long[16];
+		private long[] rangeMins = new long[16];
+		private long[] rangeMaxs = new long[16];
+		private int size;
+
+		public Builder add(long hashKey, long rangeMin, long rangeMax) {
+			if (size == hashKeys.length) {
+				hashKeys = Arrays.copyOf(hashKeys, 2 * size);
+				rangeMins = Arrays.copyOf(rangeMins, 2 * size);
+				rangeMaxs = Arrays.copyOf(rangeMaxs, 2 * size);
+			}
+
+			hashKeys[size] = hashKey;
+			rangeMins[size] = rangeMin;
+			rangeMaxs[size] = rangeMax;
+			size++;
+
+			return this;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public QueryPlan build() {
+			return new QueryPlan(Arrays.copyOf(hashKeys, size), Arrays.copyOf(rangeMins, size), Arrays.copyOf(
+					rangeMaxs, size));
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.s2.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.geo.util.HashKeyStrategy;
+import com.amazonaws.geo.util.RangeMergePolicy;
+import com.google.common.geometry.S2Region;
+
+/**
+ * <p>
+ * Bounded LRU cache of query plans, keyed by the queried region, the hash key strategy and the range merge policy
+ * with its plan version.
+ * </p>
+ * <p>
+ * The regions are expected to be quantized (see S2Util) so that nearby queries share the same plan. This class is
+ * thread safe.
+ * </p>
+ */
+public class QueryPlanCache {
+	private final int maxSize;
+	private final Map<Key, QueryPlan> plans;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	public QueryPlanCache(int maxSize) {
+		this.maxSize = maxSize;
+		plans = new LinkedHashMap<Key, QueryPlan>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, QueryPlan> eldest) {
+				if (size() > QueryPlanCache.this.maxSize) {
+					evictionCount.incrementAndGet();
+					return true;
+				}
+
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Get the cached plan for the region and record a hit or a miss.
+	 * 
+	 * @param region
+	 *            Quantized region of the query.
+	 * 
+	 * @param hashKeyStrategy
+	 *            Strategy used to split the ranges of the plan.
+	 * 
+	 * @param rangeMergePolicy
+	 *            Policy used to merge the ranges of the plan.
+	 * 
+	 * @return The cached plan, or null if there is none.
+	 */
+	public QueryPlan get(S2Region region, HashKeyStrategy hashKeyStrategy, RangeMergePolicy rangeMergePolicy) {
+		QueryPlan queryPlan;
+		synchronized (plans) {
+			queryPlan = plans.get(new Key(region, hashKeyStrategy, rangeMergePolicy));
+		}
+
+		if (queryPlan != null) {
+			hitCount.incrementAndGet();
+		} else {
+			missCount.incrementAndGet();
+		}
+
+		return queryPlan;
+	}
+
+	public void put(S2Region region, HashKeyStrategy hashKeyStrategy, RangeMergePolicy rangeMergePolicy,
+			QueryPlan queryPlan) {
+		synchronized (plans) {
+			plans.put(new Key(region, hashKeyStrategy, rangeMergePolicy), queryPlan);
+		}
+	}
+
+	public void clear() {
+		synchronized (plans) {
+			plans.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (plans) {
+			return plans.size();
+		}
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	private static class Key {
+		private final S2Region region;
+		private final HashKeyStrategy hashKeyStrategy;
+		private final RangeMergePolicy rangeMergePolicy;
+		private final long planVersion;
+
+		public Key(S2Region region, HashKeyStrategy hashKeyStrategy, RangeMergePolicy rangeMergePolicy) {
+			this.region = region;
+			this.hashKeyStrategy = hashKeyStrategy;
+			this.rangeMergePolicy = rangeMergePolicy;
+			planVersion = rangeMergePolicy.getPlanVersion();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+
+			Key key = (Key) o;
+			return hashKeyStrategy.equals(key.hashKeyStrategy) && rangeMergePolicy == key.rangeMergePolicy
+					&& planVersion == key.planVersion && region.equals(key.region);
+		}
+
+		@Override
+		public int hashCode() {
+			int hashCode = 31 * region.hashCode() + hashKeyStrategy.hashCode();
+			hashCode = 31 * hashCode + System.identityHashCode(rangeMergePolicy);
+			return 31 * hashCode + (int) (planVersion ^ (planVersion >>> 32));
+		}
+	}
+}
@@ -15,119 +15,145 @@
 
 package com.amazonaws.geo.s2.internal;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
-
 import com.amazonaws.geo.model.GeoPoint;
+import com.amazonaws.geo.util.HashKeyStrategy;
 import com.google.common.geometry.S2Cell;
 import com.google.common.geometry.S2CellId;
 import com.google.common.geometry.S2CellUnion;
 import com.google.common.geometry.S2LatLng;
-import com.google.common.geometry.S2LatLngRect;
+import com.google.common.geometry.S2Region;
+import com.google.common.geometry.S2RegionCoverer;
 
 public class S2Manager {
 
-	public static S2CellUnion findCellIds(S2LatLngRect latLngRect) {
-
-		ConcurrentLinkedQueue<S2CellId> queue = new ConcurrentLinkedQueue<S2CellId>();
-		ArrayList<S2CellId> cellIds = new ArrayList<S2CellId>();
+	/**
+	 * Find a bounded set of cells covering the given region. The number of returned cells is at most maxCells unless
+	 * minLevel forces more cells, so the number of resulting geohash ranges (and therefore Amazon DynamoDB query
+	 * requests) is capped as well.
+	 * 
+	 * @param region
+	 *            Region to cover, e.g. S2LatLngRect or S2Cap.
+	 * 
+	 * @param minLevel
+	 *            Minimum cell level used for the covering.
+	 * 
+	 * @param maxLevel
+	 *            Maximum cell level used for the covering.
+	 * 
+	 * @param maxCells
+	 *            Desired maximum number of cells in the covering.
+	 * 
+	 * @return Normalized union of cells covering the region.
+	 */
+	public static S2CellUnion findCellIds(S2Region region, int minLevel, int maxLevel, int maxCells) {
+		// S2RegionCoverer keeps state while covering, so it cannot be shared between threads.
+		S2RegionCoverer coverer = new S2RegionCoverer();
+		coverer.setMinLevel(minLevel);
+		coverer.setMaxLevel(maxLevel);
+		coverer.setMaxCells(maxCells);
+
+		return coverer.getCovering(region);
+	}
 
-		for (S2CellId c = S2CellId.begin(0); !c.equals(S2CellId.end(0)); c = c.next()) {
-			if (containsGeodataToFind(c, latLngRect)) {
-				queue.add(c);
-			}
-		}
+	public static long generateGeohash(GeoPoint geoPoint) {
+		S2LatLng latLng = S2LatLng.fromDegrees(geoPoint.getLatitude(), geoPoint.getLongitude());
+		S2Cell cell = new S2Cell(latLng);
+		S2CellId cellId = cell.id();
 
-		processQueue(queue, cellIds, latLngRect);
-		assert queue.size() == 0;
-		queue = null;
+		return cellId.id();
+	}
 
-		if (cellIds.size() > 0) {
-			S2CellUnion cellUnion = new S2CellUnion();
-			cellUnion.initFromCellIds(cellIds); // This normalize the cells.
-			// cellUnion.initRawCellIds(cellIds); // This does not normalize the cells.
-			cellIds = null;
+	public static long generateHashKey(long geohash, int hashKeyLength) {
+		return geohash / getHashKeyDenominator(geohash, hashKeyLength);
+	}
 
-			return cellUnion;
+	/**
+	 * Get the power of ten that removes all but the first hashKeyLength digits of the geohash.
+	 * 
+	 * @param geohash
+	 *            Geohash of a point.
+	 * 
+	 * @param hashKeyLength
+	 *            Length of the hash key.
+	 * 
+	 * @return The power of ten to divide the geohash by.
+	 */
+	public static long getHashKeyDenominator(long geohash, int hashKeyLength) {
+		// Count the digits without String.valueOf(). Negative numbers cover Long.MIN_VALUE, and the "-" does not count.
+		int length = 1;
+		for (long l = geohash < 0 ? geohash : -geohash; l <= -10; l /= 10) {
+			length++;
 		}
 
-		return null;
-	}
-
-	private static boolean containsGeodataToFind(S2CellId c, S2LatLngRect latLngRect) {
-		if (latLngRect != null) {
-			return latLngRect.intersects(new S2Cell(c));
+		long denominator = 1;
+		for (int i = hashKeyLength; i < length; i++) {
+			denominator *= 10;
 		}
 
-		return false;
+		return denominator;
 	}
 
-	private static void processQueue(ConcurrentLinkedQueue<S2CellId> queue, ArrayList<S2CellId> cellIds,
-			S2LatLngRect latLngRect) {
-		for (S2CellId c = queue.poll(); c != null; c = queue.poll()) {
-
-			if (!c.isValid()) {
-				break;
+	/**
+	 * Split the range by hash key and add each part with its hash key to the builder. See GeohashRange.trySplit() for
+	 * examples.
+	 * 
+	 * @param rangeMin
+	 *            Minimum geohash of the range.
+	 * 
+	 * @param rangeMax
+	 *            Maximum geohash of the range.
+	 * 
+	 * @param hashKeyStrategy
+	 *            Strategy to generate the hash keys.
+	 * 
+	 * @param builder
+	 *            Builder the parts of the range are added to.
+	 */
+	public static void splitByHashKey(long rangeMin, long rangeMax, HashKeyStrategy hashKeyStrategy,
+			QueryPlan.Builder builder) {
+		long min = rangeMin;
+		while (true) {
+			long hashKey = hashKeyStrategy.generateHashKey(min);
+			long max = hashKeyStrategy.getMaxGeohash(min);
+
+			if (max >= rangeMax) {
+				builder.add(hashKey, min, rangeMax);
+				return;
 			}
 
-			processChildren(c, latLngRect, queue, cellIds);
+			builder.add(hashKey, min, max);
+			min = max + 1;
 		}
 	}
 
-	private static void processChildren(S2CellId parent, S2LatLngRect latLngRect,
-			ConcurrentLinkedQueue<S2CellId> queue, ArrayList<S2CellId> cellIds) {
-		List<S2CellId> children = new ArrayList<S2CellId>(4);
-
-		for (S2CellId c = parent.childBegin(); !c.equals(parent.childEnd()); c = c.next()) {
-			if (containsGeodataToFind(c, latLngRect)) {
-				children.add(c);
-			}
-		}
-
-		/*
-		 * TODO: Need to update the strategy!
-		 * 
-		 * Current strategy:
-		 * 1 or 2 cells contain cellIdToFind: Traverse the children of the cell.
-		 * 3 cells contain cellIdToFind: Add 3 cells for result.
-		 * 4 cells contain cellIdToFind: Add the parent for result.
-		 * 
-		 * ** All non-leaf cells contain 4 child cells.
-		 */
-		if (children.size() == 1 || children.size() == 2) {
-			for (S2CellId child : children) {
-				if (child.isLeaf()) {
-					cellIds.add(child);
-				} else {
-					queue.add(child);
-				}
-			}
-		} else if (children.size() == 3) {
-			cellIds.addAll(children);
-		} else if (children.size() == 4) {
-			cellIds.add(parent);
-		} else {
-			assert false; // This should not happen.
+	/**
+	 * Get a lower bound of the distance from a point to the points of a geohash range. It is the distance to the
+	 * bounding rectangle of the smallest cell containing both ends of the range.
+	 * 
+	 * @param rangeMin
+	 *            Minimum geohash of the range.
+	 * 
+	 * @param rangeMax
+	 *            Maximum geohash of the range.
+	 * 
+	 * @param latLng
+	 *            Point to measure the distance from.
+	 * 
+	 * @return Distance in radians, or 0 if the range spans several faces of the cube.
+	 */
+	public static double getDistance(long rangeMin, long rangeMax, S2LatLng latLng) {
+		// The ends of a range split by hash key may not be leaf cells, but the next odd geohash is.
+		S2CellId min = new S2CellId(rangeMin | 1);
+		S2CellId max = new S2CellId(rangeMax | 1);
+		if (!min.isValid() || !max.isValid() || min.face() != max.face()) {
+			return 0;
 		}
-	}
 
-	public static long generateGeohash(GeoPoint geoPoint) {
-		S2LatLng latLng = S2LatLng.fromDegrees(geoPoint.getLatitude(), geoPoint.getLongitude());
-		S2Cell cell = new S2Cell(latLng);
-		S2CellId cellId = cell.id();
-
-		return cellId.id();
-	}
-
-	public static long generateHashKey(long geohash, int hashKeyLength) {
-		if (geohash < 0) {
-			// Counteract "-" at beginning of geohash.
-			hashKeyLength++;
+		int level = S2CellId.MAX_LEVEL;
+		while (!min.parent(level).equals(max.parent(level))) {
+			level--;
 		}
 
-		String geohashString = String.valueOf(geohash);
-		long denominator = (long) Math.pow(10, geohashString.length() - hashKeyLength);
-		return geohash / denominator;
+		return new S2Cell(min.parent(level)).getRectBound().getDistance(latLng).radians();
 	}
 }
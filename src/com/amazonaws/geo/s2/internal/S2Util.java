@@ -17,8 +17,11 @@ package com.amazonaws.geo.s2.internal;
 
 import com.amazonaws.geo.model.GeoPoint;
 import com.amazonaws.geo.model.GeoQueryRequest;
+import com.amazonaws.geo.model.QueryNearestRequest;
 import com.amazonaws.geo.model.QueryRadiusRequest;
 import com.amazonaws.geo.model.QueryRectangleRequest;
+import com.google.common.geometry.S1Angle;
+import com.google.common.geometry.S2Cap;
 import com.google.common.geometry.S2LatLng;
 import com.google.common.geometry.S2LatLngRect;
 
@@ -76,4 +79,97 @@ public class S2Util {
 
 		return null;
 	}
+
+	/**
+	 * An utility method to get a spherical cap from a given QueryRadiusRequest. Unlike the bounding box, the cap does
+	 * not include the corners outside of the circle, so the cells covering it are a tighter fit for the queried area.
+	 * 
+	 * @param queryRadiusRequest
+	 *            It contains the center point and the radius of the cap.
+	 * 
+	 * */
+	public static S2Cap getBoundingCap(QueryRadiusRequest queryRadiusRequest) {
+		GeoPoint centerPoint = queryRadiusRequest.getCenterPoint();
+		double radiusInMeter = queryRadiusRequest.getRadiusInMeter();
+
+		S2LatLng centerLatLng = S2LatLng.fromDegrees(centerPoint.getLatitude(), centerPoint.getLongitude());
+
+		return getCap(centerLatLng, radiusInMeter);
+	}
+
+	/**
+	 * An utility method to get a spherical cap containing every point that a QueryNearestRequest may return.
+	 * 
+	 * @param queryNearestRequest
+	 *            It contains the center point and the maximum radius of the cap.
+	 * 
+	 * */
+	public static S2Cap getBoundingCap(QueryNearestRequest queryNearestRequest) {
+		GeoPoint centerPoint = queryNearestRequest.getCenterPoint();
+		double radiusInMeter = queryNearestRequest.getMaxRadiusInMeter();
+
+		S2LatLng centerLatLng = S2LatLng.fromDegrees(centerPoint.getLatitude(), centerPoint.getLongitude());
+
+		return getCap(centerLatLng, radiusInMeter);
+	}
+
+	/**
+	 * Enlarge the rectangle so that its corners are on a grid of the given precision. Every rectangle that snaps to
+	 * the same grid cells yields an equal S2LatLngRect, which is contained by the result.
+	 * 
+	 * @param latLngRect
+	 *            Rectangle to quantize.
+	 * 
+	 * @param precisionInDegree
+	 *            Size of the grid in degrees.
+	 * 
+	 * */
+	public static S2LatLngRect getQuantizedLatLngRect(S2LatLngRect latLngRect, double precisionInDegree) {
+		double latLo = Math.floor(latLngRect.latLo().degrees() / precisionInDegree) * precisionInDegree;
+		double latHi = Math.ceil(latLngRect.latHi().degrees() / precisionInDegree) * precisionInDegree;
+		double lngLo = Math.floor(latLngRect.lngLo().degrees() / precisionInDegree) * precisionInDegree;
+		double lngHi = Math.ceil(latLngRect.lngHi().degrees() / precisionInDegree) * precisionInDegree;
+
+		latLo = Math.max(latLo, -90.0);
+		latHi = Math.min(latHi, 90.0);
+		lngLo = Math.max(lngLo, -180.0);
+		lngHi = Math.min(lngHi, 180.0);
+
+		return new S2LatLngRect(S2LatLng.fromDegrees(latLo, lngLo), S2LatLng.fromDegrees(latHi, lngHi));
+	}
+
+	/**
+	 * Get a spherical cap whose center is snapped to a grid of the given precision and whose radius is rounded up, so
+	 * that the cap still contains the circle of the given QueryRadiusRequest. Nearby circles of similar radius yield an
+	 * equal S2Cap.
+	 * 
+	 * @param queryRadiusRequest
+	 *            It contains the center point and the radius of the cap.
+	 * 
+	 * @param precisionInDegree
+	 *            Size of the grid in degrees.
+	 * 
+	 * */
+	public static S2Cap getQuantizedCap(QueryRadiusRequest queryRadiusRequest, double precisionInDegree) {
+		GeoPoint centerPoint = queryRadiusRequest.getCenterPoint();
+
+		double latitude = Math.round(centerPoint.getLatitude() / precisionInDegree) * precisionInDegree;
+		double longitude = Math.round(centerPoint.getLongitude() / precisionInDegree) * precisionInDegree;
+		S2LatLng centerLatLng = S2LatLng.fromDegrees(latitude, longitude);
+
+		// The snapped center is at most half a grid diagonal away from the original center.
+		double precisionInMeter = Math.toRadians(precisionInDegree) * S2LatLng.EARTH_RADIUS_METERS;
+		double maxOffsetInMeter = precisionInMeter * Math.sqrt(2.0) / 2.0;
+		double radiusInMeter = Math.ceil((queryRadiusRequest.getRadiusInMeter() + maxOffsetInMeter) / precisionInMeter)
+				* precisionInMeter;
+
+		return getCap(centerLatLng, radiusInMeter);
+	}
+
+	private static S2Cap getCap(S2LatLng centerLatLng, double radiusInMeter) {
+		// Same earth radius as S2LatLng.getEarthDistance(), which is used to filter the result.
+		S1Angle angle = S1Angle.radians(radiusInMeter / S2LatLng.EARTH_RADIUS_METERS);
+
+		return S2Cap.fromAxisAngle(centerLatLng.toPoint(), angle);
+	}
 }
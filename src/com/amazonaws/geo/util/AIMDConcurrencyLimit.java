@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.util;
+
+/**
+ * <p>
+ * Additive increase, multiplicative decrease concurrency limit. Every request completing faster than the latency
+ * threshold raises the limit by 1 / limit, i.e. by about 1 per round of requests. A slower request lowers the limit by
+ * 10%, and a throttled request halves it.
+ * </p>
+ * <p>
+ * The completions of the requests that were already in flight when the limit was lowered carry the same congestion
+ * signal, so the limit is lowered at most once per latency threshold.
+ * </p>
+ */
+public class AIMDConcurrencyLimit implements ConcurrencyLimit {
+	private static final double LATENCY_BACKOFF_RATIO = 0.9;
+	private static final double THROTTLING_BACKOFF_RATIO = 0.5;
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final long latencyThresholdInMillis;
+
+	private double limit;
+	private long lastDecreaseInMillis;
+
+	/**
+	 * @param initialLimit
+	 *            Limit before any request has completed.
+	 * 
+	 * @param minLimit
+	 *            Lower bound of the limit. Must be at least 1.
+	 * 
+	 * @param maxLimit
+	 *            Upper bound of the limit.
+	 * 
+	 * @param latencyThresholdInMillis
+	 *            Requests slower than this are a sign of congestion.
+	 */
+	public AIMDConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long latencyThresholdInMillis) {
+		if (minLimit < 1 || maxLimit < minLimit) {
+			throw new IllegalArgumentException("The limits must satisfy 1 <= minLimit <= maxLimit.");
+		}
+
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.latencyThresholdInMillis = latencyThresholdInMillis;
+		limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+	}
+
+	@Override
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	@Override
+	public synchronized void onSuccess(long latencyInMillis) {
+		if (latencyInMillis > latencyThresholdInMillis) {
+			decrease(LATENCY_BACKOFF_RATIO);
+		} else {
+			limit = Math.min(maxLimit, limit + 1.0 / limit);
+		}
+	}
+
+	@Override
+	public synchronized void onThrottled() {
+		decrease(THROTTLING_BACKOFF_RATIO);
+	}
+
+	private void decrease(double ratio) {
+		long now = System.currentTimeMillis();
+		if (now - lastDecreaseInMillis < latencyThresholdInMillis) {
+			return;
+		}
+
+		lastDecreaseInMillis = now;
+		limit = Math.max(minLimit, limit * ratio);
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.util;
+
+/**
+ * <p>
+ * The hash key is the S2 cell at the given level that contains the point, i.e. the leading face and position bits of
+ * the geohash. Every partition is exactly one cell, so ranges of the covering split at cell boundaries instead of
+ * decimal boundaries, and no strings are allocated to compute the hash key.
+ * </p>
+ * <p>
+ * Cells at level 10 are roughly 10 km wide, cells at level 13 roughly 1 km.
+ * </p>
+ */
+public class BitPrefixHashKeyStrategy implements HashKeyStrategy {
+	private final int level;
+	private final int shift;
+
+	/**
+	 * @param level
+	 *            S2 cell level of the partitions, from 0 to 30.
+	 */
+	public BitPrefixHashKeyStrategy(int level) {
+		if (level < 0 || level > 30) {
+			throw new IllegalArgumentException("level must be between 0 and 30: " + level);
+		}
+
+		this.level = level;
+
+		// 3 face bits, then 2 position bits per level.
+		shift = 64 - 3 - 2 * level;
+	}
+
+	@Override
+	public long generateHashKey(long geohash) {
+		// Arithmetic shift keeps the hash keys in the same order as the (signed) geohashs.
+		return geohash >> shift;
+	}
+
+	@Override
+	public long getMaxGeohash(long geohash) {
+		return geohash | ((1L << shift) - 1);
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof BitPrefixHashKeyStrategy && ((BitPrefixHashKeyStrategy) o).level == level;
+	}
+
+	@Override
+	public int hashCode() {
+		return level;
+	}
+}
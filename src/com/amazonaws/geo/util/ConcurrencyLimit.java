@@ -0,0 +1,47 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.util;
+
+/**
+ * <p>
+ * Bounds the number of Amazon DynamoDB query requests a GeoDataManager has in flight across all of its geo queries.
+ * Requests above the limit wait until a request in flight completes.
+ * </p>
+ * <p>
+ * The limit may adapt to the latency of the completed requests and to throttling. Implementations must be thread
+ * safe.
+ * </p>
+ */
+public interface ConcurrencyLimit {
+
+	/**
+	 * @return Current maximum number of query requests in flight. Must be at least 1.
+	 */
+	public int getLimit();
+
+	/**
+	 * Called when a query request has completed successfully.
+	 * 
+	 * @param latencyInMillis
+	 *            Time between sending the request and receiving the response.
+	 */
+	public void onSuccess(long latencyInMillis);
+
+	/**
+	 * Called when a query request has been rejected because the provisioned throughput has been exceeded.
+	 */
+	public void onThrottled();
+}
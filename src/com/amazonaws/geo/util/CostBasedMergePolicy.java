@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Merge ranges when the expected number of items in the gap costs less than an additional query request.
+ * </p>
+ * <p>
+ * The cost of a request is expressed as the number of items that could be read instead, e.g. the per-request latency
+ * and the minimum consumed capacity of a query. The expected number of items in the gap is the gap times the density
+ * of items per geohash. The density is either fixed, or an exponentially weighted moving average of the densities
+ * observed by previous queries, starting from the given value.
+ * </p>
+ */
+public class CostBasedMergePolicy implements RangeMergePolicy {
+	private static final double SMOOTHING_FACTOR = 0.1;
+
+	private final double requestCostInItems;
+	private final boolean useObservedDensity;
+
+	// Double bits of the current density, so that it can be updated atomically.
+	private final AtomicLong density;
+
+	/**
+	 * @param requestCostInItems
+	 *            Cost of an additional query request, as a number of items.
+	 * 
+	 * @param itemsPerGeohash
+	 *            Expected number of items per geohash, i.e. per leaf cell id.
+	 * 
+	 * @param useObservedDensity
+	 *            Whether to update the density from the results of previous queries.
+	 */
+	public CostBasedMergePolicy(double requestCostInItems, double itemsPerGeohash, boolean useObservedDensity) {
+		this.requestCostInItems = requestCostInItems;
+		this.useObservedDensity = useObservedDensity;
+		density = new AtomicLong(Double.doubleToLongBits(itemsPerGeohash));
+	}
+
+	@Override
+	public boolean shouldMerge(long gap) {
+		return gap * getItemsPerGeohash() <= requestCostInItems;
+	}
+
+	@Override
+	public void recordQuery(long rangeWidth, long itemCount) {
+		if (!useObservedDensity || rangeWidth <= 0) {
+			return;
+		}
+
+		double observed = (double) itemCount / rangeWidth;
+		while (true) {
+			long current = density.get();
+			double updated = (1.0 - SMOOTHING_FACTOR) * Double.longBitsToDouble(current) + SMOOTHING_FACTOR * observed;
+			if (density.compareAndSet(current, Double.doubleToLongBits(updated))) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * The plans change with the binary exponent of the density, so a plan is rebuilt once the density has roughly
+	 * doubled or halved.
+	 */
+	@Override
+	public long getPlanVersion() {
+		if (!useObservedDensity) {
+			return 0;
+		}
+
+		return Math.getExponent(getItemsPerGeohash());
+	}
+
+	public double getRequestCostInItems() {
+		return requestCostInItems;
+	}
+
+	public double getItemsPerGeohash() {
+		return Double.longBitsToDouble(density.get());
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.util;
+
+import com.amazonaws.geo.s2.internal.S2Manager;
+
+/**
+ * The default strategy: the hash key is the first hashKeyLength decimal digits of the geohash.
+ */
+public class DecimalHashKeyStrategy implements HashKeyStrategy {
+	private final int hashKeyLength;
+
+	public DecimalHashKeyStrategy(int hashKeyLength) {
+		this.hashKeyLength = hashKeyLength;
+	}
+
+	@Override
+	public long generateHashKey(long geohash) {
+		return S2Manager.generateHashKey(geohash, hashKeyLength);
+	}
+
+	/*
+	 * e.g., when the hash key length is 3, 123456789 has the hash key 123 and the range of the hash key is from
+	 * 123000000 to 123999999. -123456789 has the hash key -123 and the range is from -123999999 to -123000000.
+	 */
+	@Override
+	public long getMaxGeohash(long geohash) {
+		long hashKey = generateHashKey(geohash);
+		long denominator = S2Manager.getHashKeyDenominator(geohash, hashKeyLength);
+
+		if (geohash < 0) {
+			return hashKey * denominator;
+		}
+
+		long maxGeohash = hashKey * denominator + (denominator - 1);
+
+		// e.g., the range of the hash key 9 is capped at Long.MAX_VALUE.
+		return maxGeohash < geohash ? Long.MAX_VALUE : maxGeohash;
+	}
+
+	public int getHashKeyLength() {
+		return hashKeyLength;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof DecimalHashKeyStrategy && ((DecimalHashKeyStrategy) o).hashKeyLength == hashKeyLength;
+	}
+
+	@Override
+	public int hashCode() {
+		return hashKeyLength;
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.util;
+
+import java.util.Random;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.geo.dynamodb.internal.DynamoDBUtil;
+
+/**
+ * <p>
+ * Retries throttled requests, server errors and client errors that are not service errors, e.g. network failures,
+ * with exponential backoff and full jitter: the delay before a retry is random between 0 and the base delay doubled for
+ * each previous retry, up to the maximum delay. Throttled requests back off from a larger base delay, since retrying
+ * sooner does not free provisioned throughput, and the jitter spreads the retries of the ranges of a geo query that
+ * were throttled together.
+ * </p>
+ * <p>
+ * Requests rejected for other reasons, e.g. a validation error, are not retried.
+ * </p>
+ */
+public class ExponentialBackoffRetryPolicy implements QueryRetryPolicy {
+	private final int maxRetries;
+	private final long baseDelayInMillis;
+	private final long throttlingBaseDelayInMillis;
+	private final long maxDelayInMillis;
+
+	private final Random random = new Random();
+
+	/**
+	 * @param maxRetries
+	 *            Maximum number of retries of a request. 0 disables retries.
+	 * 
+	 * @param baseDelayInMillis
+	 *            Upper bound of the delay before the first retry of a request that failed.
+	 * 
+	 * @param throttlingBaseDelayInMillis
+	 *            Upper bound of the delay before the first retry of a request that was throttled.
+	 * 
+	 * @param maxDelayInMillis
+	 *            Upper bound of the delay before any retry.
+	 */
+	public ExponentialBackoffRetryPolicy(int maxRetries, long baseDelayInMillis, long throttlingBaseDelayInMillis,
+			long maxDelayInMillis) {
+		if (maxRetries < 0 || baseDelayInMillis < 0 || throttlingBaseDelayInMillis < 0 || maxDelayInMillis < 0) {
+			throw new IllegalArgumentException("The number of retries and the delays must not be negative.");
+		}
+
+		this.maxRetries = maxRetries;
+		this.baseDelayInMillis = baseDelayInMillis;
+		this.throttlingBaseDelayInMillis = throttlingBaseDelayInMillis;
+		this.maxDelayInMillis = maxDelayInMillis;
+	}
+
+	@Override
+	public long getRetryDelayInMillis(Exception e, int attempt) {
+		if (attempt > maxRetries) {
+			return -1;
+		}
+
+		long delayInMillis;
+		if (DynamoDBUtil.isThrottlingException(e)) {
+			delayInMillis = throttlingBaseDelayInMillis;
+		} else if (isRetryable(e)) {
+			delayInMillis = baseDelayInMillis;
+		} else {
+			return -1;
+		}
+
+		// Double the delay for each previous attempt without overflowing.
+		for (int i = 1; i < attempt && delayInMillis < maxDelayInMillis; i++) {
+			delayInMillis *= 2;
+		}
+		delayInMillis = Math.min(delayInMillis, maxDelayInMillis);
+
+		synchronized (random) {
+			return (long) (random.nextDouble() * delayInMillis);
+		}
+	}
+
+	private boolean isRetryable(Exception e) {
+		if (e instanceof AmazonServiceException) {
+			return ((AmazonServiceException) e).getStatusCode() >= 500;
+		}
+
+		return e instanceof AmazonClientException;
+	}
+}
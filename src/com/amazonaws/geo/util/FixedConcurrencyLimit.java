@@ -0,0 +1,44 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.util;
+
+/**
+ * Constant concurrency limit.
+ */
+public class FixedConcurrencyLimit implements ConcurrencyLimit {
+	private final int limit;
+
+	public FixedConcurrencyLimit(int limit) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("The limit must be at least 1.");
+		}
+
+		this.limit = limit;
+	}
+
+	@Override
+	public int getLimit() {
+		return limit;
+	}
+
+	@Override
+	public void onSuccess(long latencyInMillis) {
+	}
+
+	@Override
+	public void onThrottled() {
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.util;
+
+/**
+ * Merge ranges whose gap is at most a fixed number of geohashs.
+ */
+public class FixedThresholdMergePolicy implements RangeMergePolicy {
+	private final long threshold;
+
+	public FixedThresholdMergePolicy(long threshold) {
+		this.threshold = threshold;
+	}
+
+	@Override
+	public boolean shouldMerge(long gap) {
+		return gap <= threshold;
+	}
+
+	@Override
+	public void recordQuery(long rangeWidth, long itemCount) {
+	}
+
+	@Override
+	public long getPlanVersion() {
+		return 0;
+	}
+
+	public long getThreshold() {
+		return threshold;
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.util;
+
+/**
+ * <p>
+ * Derives the hash key of the table from the geohash of a point. Each geohash must lie in one contiguous range of
+ * geohashs with the same hash key, which ends at getMaxGeohash(), so that a range of geohashs can be split into one
+ * range per hash key. The hash keys need not increase with the geohash.
+ * </p>
+ * <p>
+ * Changing the strategy of an existing table makes its items unreachable, because they are stored under the hash keys
+ * of the previous strategy. Implementations must be thread safe, and should implement equals() and hashCode() since
+ * query plans are cached per strategy.
+ * </p>
+ */
+public interface HashKeyStrategy {
+
+	/**
+	 * @param geohash
+	 *            Geohash of a point.
+	 * 
+	 * @return Hash key of the point.
+	 */
+	public long generateHashKey(long geohash);
+
+	/**
+	 * @param geohash
+	 *            Geohash of a point.
+	 * 
+	 * @return The largest geohash of the contiguous range with the same hash key as the given geohash; every geohash
+	 *         between the two has that hash key.
+	 */
+	public long getMaxGeohash(long geohash);
+}
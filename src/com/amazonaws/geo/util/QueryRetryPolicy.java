@@ -0,0 +1,40 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.util;
+
+/**
+ * <p>
+ * Decides whether a failed Amazon DynamoDB query request of a geo query is retried, and when. A retried request resumes
+ * the geohash range from the same ExclusiveStartKey, so the pages already retrieved are not read again. If the request
+ * is not retried, the geo query fails.
+ * </p>
+ * <p>
+ * These retries come on top of the retries of the AmazonDynamoDBClient itself. Implementations must be thread safe.
+ * </p>
+ */
+public interface QueryRetryPolicy {
+
+	/**
+	 * @param e
+	 *            Error of the failed attempt.
+	 * 
+	 * @param attempt
+	 *            Number of failed attempts of the request so far, starting with 1.
+	 * 
+	 * @return Delay before the next attempt in milliseconds, or a negative number not to retry the request.
+	 */
+	public long getRetryDelayInMillis(Exception e, int attempt);
+}
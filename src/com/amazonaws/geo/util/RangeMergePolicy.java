@@ -0,0 +1,56 @@
+/*
+ * Copyright 2010-2013 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ * 
+ *  http://aws.amazon.com/apache2.0
+ * 
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazonaws.geo.util;
+
+/**
+ * <p>
+ * Decides whether two geohash ranges with the same hash key are queried with a single Amazon DynamoDB query request.
+ * Merging saves a request, but the items in the gap between the ranges are read and then filtered out.
+ * </p>
+ * <p>
+ * Overlapping ranges and ranges whose gap is at most GeoDataManagerConfiguration.MERGE_THRESHOLD are always merged.
+ * Implementations must be thread safe.
+ * </p>
+ */
+public interface RangeMergePolicy {
+
+	/**
+	 * @param gap
+	 *            Difference between the minimum geohash of the next range and the maximum geohash of the previous
+	 *            range.
+	 * 
+	 * @return true if the two ranges should be merged into one.
+	 */
+	public boolean shouldMerge(long gap);
+
+	/**
+	 * Called after a geohash range has been queried, so that the policy can learn the density of the data.
+	 * 
+	 * @param rangeWidth
+	 *            Number of geohashs in the queried range.
+	 * 
+	 * @param itemCount
+	 *            Number of items Amazon DynamoDB returned for the range, before filtering.
+	 */
+	public void recordQuery(long rangeWidth, long itemCount);
+
+	/**
+	 * @return A value that changes whenever the decisions of shouldMerge() may have changed noticeably, e.g. the
+	 *         learned density rounded to a power of two. Cached query plans are only reused while it stays the same. A
+	 *         policy that does not adapt returns a constant.
+	 */
+	public long getPlanVersion();
+}